@@ -0,0 +1,73 @@
+package Benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Wall time, bytes allocated by the calling thread and GC time over a section of code, for the
+ * examples whose benchmarks compare allocation (StringBuilderPool, Rational, ComplexArray).
+ *
+ *   Measurement m = Measurement.start();
+ *   ... work ...
+ *   m.stop();
+ *   System.out.println("  plain : " + m);
+ *
+ * Allocated bytes come from com.sun.management.ThreadMXBean and are -1 on JVMs without it.
+ * Compile it together with the example, e.g. from "Java Programs":
+ *   javac -d out Benchmark/Measurement.java OOPS/ComplexArray.java OOPS/ComplexNumber.java
+ */
+public final class Measurement {
+
+    // Read innermost, so that reading the other counters is not counted as allocation
+    private final long startGcMillis = totalGcMillis();
+    private final long startNanos = System.nanoTime();
+    private final long startAllocated = threadAllocatedBytes();
+    private long nanos, allocated, gc;
+
+    private Measurement() {
+    }
+
+    public static Measurement start() {
+        return new Measurement();
+    }
+
+    public void stop() {
+        allocated = startAllocated < 0 ? -1 : threadAllocatedBytes() - startAllocated;
+        nanos = System.nanoTime() - startNanos;
+        gc = totalGcMillis() - startGcMillis;
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
+    public long allocatedBytes() {
+        return allocated;
+    }
+
+    public long gcMillis() {
+        return gc;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%8.1f ms, allocated %,15d bytes, GC %4d ms", nanos / 1e6, allocated, gc);
+    }
+
+    private static long threadAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long totalGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+}
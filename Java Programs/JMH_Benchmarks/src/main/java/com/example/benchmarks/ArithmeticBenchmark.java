@@ -0,0 +1,109 @@
+package com.example.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Fraction (OOPS/FractionOperations) and ComplexNumber (OOPS/operationOnComplexNum) arithmetic.
+ * The operands are non-final fields so the JIT cannot fold the operations into constants, and
+ * every result goes to the Blackhole.
+ *
+ * The two classes are copied here unchanged: the originals are package-private classes in
+ * standalone example files and cannot be referenced from this module.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ArithmeticBenchmark {
+
+    Fraction x = new Fraction(2, 3);
+    Fraction y = new Fraction(4, 5);
+
+    ComplexNumber a = new ComplexNumber(10, 5);
+    ComplexNumber b = new ComplexNumber(2, 3);
+
+    @Benchmark
+    public void fractionOperations(Blackhole bh) {
+        bh.consume(x.add(y));
+        bh.consume(x.subtract(y));
+        bh.consume(x.multiply(y));
+    }
+
+    @Benchmark
+    public void complexOperations(Blackhole bh) {
+        bh.consume(a.add(b));
+        bh.consume(a.subtract(b));
+        bh.consume(a.multiply(b));
+        bh.consume(a.divide(b));
+    }
+
+    static class Fraction {
+        int numerator, denominator;
+
+        Fraction(int n, int d) {
+            this.numerator = n;
+            this.denominator = d;
+        }
+
+        Fraction add(Fraction a) {
+            int den = a.denominator * this.denominator;
+            int num = (this.numerator * a.denominator) + (a.numerator * this.denominator);
+            return new Fraction(num, den);
+        }
+
+        Fraction subtract(Fraction a) {
+            int den = a.denominator * this.denominator;
+            int num = (this.numerator * a.denominator) - (a.numerator * this.denominator);
+            return new Fraction(num, den);
+        }
+
+        Fraction multiply(Fraction a) {
+            int num = this.numerator * a.numerator;
+            int den = this.denominator * a.denominator;
+            return new Fraction(num, den);
+        }
+    }
+
+    static class ComplexNumber {
+        float real, imaginary;
+
+        ComplexNumber(float r, float i) {
+            this.real = r;
+            this.imaginary = i;
+        }
+
+        ComplexNumber add(ComplexNumber x) {
+            return new ComplexNumber(this.real + x.real, this.imaginary + x.imaginary);
+        }
+
+        ComplexNumber subtract(ComplexNumber x) {
+            return new ComplexNumber(this.real - x.real, this.imaginary - x.imaginary);
+        }
+
+        ComplexNumber multiply(ComplexNumber x) {
+            float r = this.real * x.real - this.imaginary * x.imaginary;
+            float i = this.real * x.imaginary + this.imaginary * x.real;
+            return new ComplexNumber(r, i);
+        }
+
+        ComplexNumber divide(ComplexNumber x) {
+            float denominator = x.real * x.real + x.imaginary * x.imaginary;
+            float r = (this.real * x.real + this.imaginary * x.imaginary) / denominator;
+            float i = (this.imaginary * x.real - this.real * x.imaginary) / denominator;
+            return new ComplexNumber(r, i);
+        }
+    }
+}
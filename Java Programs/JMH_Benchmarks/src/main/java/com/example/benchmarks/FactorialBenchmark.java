@@ -0,0 +1,51 @@
+package com.example.benchmarks;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BigInteger factorial the way ComputeFactorial computes it, copied here: one multiplication per
+ * factor, with each factor parsed from a String. valueOfFactors builds the factors with
+ * BigInteger.valueOf to show what the parsing costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class FactorialBenchmark {
+
+    @Param({ "500", "5000" })
+    int n;
+
+    @Benchmark
+    public BigInteger computeFactorial() {
+        BigInteger ans = new BigInteger("1");
+        for (int i = 1; i <= n; i++) {
+            BigInteger temp = new BigInteger(i + "");
+            ans = ans.multiply(temp);
+        }
+        return ans;
+    }
+
+    @Benchmark
+    public BigInteger valueOfFactors() {
+        BigInteger ans = BigInteger.ONE;
+        for (int i = 1; i <= n; i++) {
+            ans = ans.multiply(BigInteger.valueOf(i));
+        }
+        return ans;
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Math_Lib.FastMath;
+
+/**
+ * Math against the table-and-polynomial approximations of Math_Lib/FastMath, in ns per call.
+ * Every benchmark runs over the same ARGUMENTS random inputs and returns the sum of the results,
+ * so no call can be removed as dead code.
+ *
+ * FastMath is the class in Math_Lib itself, compiled into this module (see the pom), so the
+ * numbers are for the code the examples run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class FastMathBenchmark {
+
+    private static final int ARGUMENTS = 1024;
+
+    @Param({ "1e-7", "1e-12" })
+    double maxError;
+
+    FastMath fast;
+    double[] angles = new double[ARGUMENTS];
+    double[] positives = new double[ARGUMENTS];
+    double[] exponents = new double[ARGUMENTS];
+
+    @Setup
+    public void setUp() {
+        fast = new FastMath(maxError);
+        Random random = new Random(3);
+        for (int i = 0; i < ARGUMENTS; i++) {
+            angles[i] = (random.nextDouble() - 0.5) * 20;
+            positives[i] = random.nextDouble() * 1000 + 1e-3;
+            exponents[i] = (random.nextDouble() - 0.5) * 40;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double mathSin() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += Math.sin(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double fastSin() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += fast.sin(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double mathCos() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += Math.cos(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double fastCos() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += fast.cos(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double mathTan() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += Math.tan(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double fastTan() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += fast.tan(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double mathLog() {
+        double sum = 0;
+        for (double x : positives) {
+            sum += Math.log(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double fastLog() {
+        double sum = 0;
+        for (double x : positives) {
+            sum += fast.log(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double mathLog10() {
+        double sum = 0;
+        for (double x : positives) {
+            sum += Math.log10(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double fastLog10() {
+        double sum = 0;
+        for (double x : positives) {
+            sum += fast.log10(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double mathExp() {
+        double sum = 0;
+        for (double x : exponents) {
+            sum += Math.exp(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double fastExp() {
+        double sum = 0;
+        for (double x : exponents) {
+            sum += fast.exp(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double mathPow() {
+        double sum = 0;
+        for (double x : positives) {
+            sum += Math.pow(x, 1.7);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENTS)
+    public double fastPow() {
+        double sum = 0;
+        for (double x : positives) {
+            sum += fast.pow(x, 1.7);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Counting the words longer than five characters in a List<String>: a for loop, stream() and
+ * parallelStream(). This is the comparison the first version of Streams/CountLongWords made;
+ * CountLongWords itself now scans a file through a FileChannel and is not measured here. The
+ * word list is generated once per trial from a fixed seed, so every fork counts the same input.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LongWordFilterBenchmark {
+
+    private static final String[] VOCABULARY = {
+        "alice", "was", "beginning", "to", "get", "very", "tired", "of", "sitting", "by",
+        "her", "sister", "on", "the", "bank", "and", "having", "nothing", "rabbit", "curious"
+    };
+
+    @Param({ "10000", "1000000" })
+    int wordCount;
+
+    List<String> words;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        words = new ArrayList<>(wordCount);
+        for (int i = 0; i < wordCount; i++) {
+            words.add(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+        }
+    }
+
+    @Benchmark
+    public long loop() {
+        long count = 0;
+        for (String w : words) {
+            if (w.length() > 5) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long stream() {
+        return words.stream().filter(w -> w.length() > 5).count();
+    }
+
+    @Benchmark
+    public long parallelStream() {
+        return words.parallelStream().filter(w -> w.length() > 5).count();
+    }
+}
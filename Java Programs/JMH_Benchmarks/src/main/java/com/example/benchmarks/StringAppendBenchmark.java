@@ -0,0 +1,49 @@
+package com.example.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * StringBuffer vs StringBuilder append, a copy of the workload of
+ * StringBuilder_StringBuffer_speedCompare (that example only has a main method). The built String
+ * is returned so the appends cannot be eliminated as dead code.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class StringAppendBenchmark {
+
+    @Param({ "1000", "1000000" })
+    int appends;
+
+    @Benchmark
+    public String stringBuffer() {
+        StringBuffer buffer = new StringBuffer("InterviewBit");
+        for (int i = 0; i < appends; i++) {
+            buffer.append("abcd");
+        }
+        return buffer.toString();
+    }
+
+    @Benchmark
+    public String stringBuilder() {
+        StringBuilder builder = new StringBuilder("InterviewBit");
+        for (int i = 0; i < appends; i++) {
+            builder.append("abcd");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,620 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A mutable big integer for sums and products that are updated many times.
+ *
+ * Math_BigInt calls add / subtract / multiply / mod on BigInteger, and every call creates a new
+ * immutable BigInteger (with a new int[] inside). Summing millions of values that way creates
+ * millions of objects. BigAccumulator changes its own value instead:
+ *
+ *  - while the value fits in a long it is kept in a long, and add / subtract / multiply are a
+ *    single machine operation with an overflow check
+ *  - past that it is kept as a sign and an int[] magnitude (least significant word first) that
+ *    is updated in place and only reallocated when it has to grow
+ *  - mod(m) and powMod(e, m) for a long modulus work word by word on the magnitude and never
+ *    allocate
+ *
+ * Usage: java BigAccumulator [values]
+ */
+public class BigAccumulator {
+
+    private static final long MASK = 0xFFFFFFFFL;
+
+    // The value while it fits in a long
+    private boolean isSmall = true;
+    private long small;
+
+    // Otherwise sign (-1 or 1) and magnitude words [0, length), least significant first
+    private int sign;
+    private int[] mag = new int[4];
+    private int length;
+
+    // Reused buffers: the product of a multiplication, and the words of an operand
+    private int[] spare = new int[4];
+    private int[] operand = new int[2];
+
+    public BigAccumulator() {
+    }
+
+    public BigAccumulator(long value) {
+        small = value;
+    }
+
+    public BigAccumulator set(long value) {
+        isSmall = true;
+        small = value;
+        return this;
+    }
+
+    public BigAccumulator clear() {
+        return set(0);
+    }
+
+    public int signum() {
+        return isSmall ? Long.signum(small) : sign;
+    }
+
+    public boolean fitsInLong() {
+        return isSmall;
+    }
+
+    /**
+     * The value as a long; throws ArithmeticException when it does not fit.
+     */
+    public long longValueExact() {
+        if (!isSmall) {
+            throw new ArithmeticException("Value does not fit in a long");
+        }
+        return small;
+    }
+
+    public BigAccumulator add(long value) {
+        if (isSmall) {
+            long sum = small + value;
+            // Overflow only when both operands have a sign different from the result
+            if (((small ^ sum) & (value ^ sum)) >= 0) {
+                small = sum;
+                return this;
+            }
+            spill();
+        }
+        addLong(Long.signum(value), value < 0 ? -value : value);
+        return this;
+    }
+
+    public BigAccumulator subtract(long value) {
+        if (isSmall) {
+            long difference = small - value;
+            if (((small ^ value) & (small ^ difference)) >= 0) {
+                small = difference;
+                return this;
+            }
+            spill();
+        }
+        addLong(-Long.signum(value), value < 0 ? -value : value);
+        return this;
+    }
+
+    public BigAccumulator add(BigAccumulator other) {
+        if (other.isSmall) {
+            return add(other.small);
+        }
+        if (other == this) {
+            return multiply(2);
+        }
+        if (isSmall) {
+            spill();
+        }
+        addWords(other.sign, other.mag, other.length);
+        return this;
+    }
+
+    public BigAccumulator add(BigInteger value) {
+        if (value.bitLength() < 64) {
+            return add(value.longValue());
+        }
+        if (isSmall) {
+            spill();
+        }
+        // Big-endian bytes of the magnitude into little-endian words. The bytes carry a zero sign
+        // byte when the bit length is a multiple of 8; a zero top word would break compareMagnitude
+        byte[] bytes = value.abs().toByteArray();
+        int words = (value.bitLength() + 31) / 32;
+        if (operand.length < words) {
+            operand = new int[words];
+        }
+        for (int i = 0; i < words; i++) {
+            int word = 0;
+            for (int b = 3; b >= 0; b--) {
+                int index = bytes.length - 1 - (i * 4 + b);
+                word = (word << 8) | (index >= 0 ? bytes[index] & 0xFF : 0);
+            }
+            operand[i] = word;
+        }
+        addWords(value.signum(), operand, words);
+        return this;
+    }
+
+    public BigAccumulator multiply(long value) {
+        if (isSmall) {
+            long product = small * value;
+            long high = Math.multiplyHigh(small, value);
+            // No overflow when the high half is just the sign extension of the low half
+            if (high == (product >> 63)) {
+                small = product;
+                return this;
+            }
+            spill();
+        }
+        if (value == 0) {
+            return clear();
+        }
+        int words = operandWords(value);
+        sign *= Long.signum(value);
+
+        // Schoolbook product into spare, then swap the two buffers
+        int productLength = length + words;
+        if (spare.length < productLength) {
+            spare = new int[Math.max(productLength, mag.length * 2)];
+        }
+        Arrays.fill(spare, 0, productLength, 0);
+        for (int j = 0; j < words; j++) {
+            long factor = operand[j] & MASK;
+            long carry = 0;
+            for (int i = 0; i < length; i++) {
+                long t = (mag[i] & MASK) * factor + (spare[i + j] & MASK) + carry;
+                spare[i + j] = (int) t;
+                carry = t >>> 32;
+            }
+            spare[length + j] = (int) carry;
+        }
+        int[] swap = mag;
+        mag = spare;
+        spare = swap;
+        length = productLength;
+        normalize();
+        return this;
+    }
+
+    /**
+     * The value modulo m (0 <= result < m, like BigInteger.mod), without allocating.
+     */
+    public long mod(long m) {
+        if (m <= 0) {
+            throw new ArithmeticException("Modulus must be positive: " + m);
+        }
+        if (isSmall) {
+            return Math.floorMod(small, m);
+        }
+        long r = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            // r * 2^32 + word as a 128-bit (high, low) pair; high < m because r < m
+            r = remainder(r >>> 32, (r << 32) | (mag[i] & MASK), m);
+        }
+        return sign < 0 && r != 0 ? m - r : r;
+    }
+
+    /**
+     * This value to the power exponent, modulo m.
+     */
+    public long powMod(long exponent, long m) {
+        return powMod(mod(m), exponent, m);
+    }
+
+    /**
+     * base^exponent mod m for a positive modulus, with 128-bit intermediate products and no
+     * BigInteger.
+     */
+    public static long powMod(long base, long exponent, long m) {
+        if (exponent < 0) {
+            throw new ArithmeticException("Negative exponent: " + exponent);
+        }
+        if (m <= 0) {
+            throw new ArithmeticException("Modulus must be positive: " + m);
+        }
+        long result = 1 % m;
+        base = Math.floorMod(base, m);
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result = mulMod(result, base, m);
+            }
+            base = mulMod(base, base, m);
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    // a * b mod m for 0 <= a, b < m
+    static long mulMod(long a, long b, long m) {
+        return remainder(Math.multiplyHigh(a, b), a * b, m);
+    }
+
+    /**
+     * The remainder of the unsigned 128-bit number (high, low) divided by m, for high < m:
+     * long division in 32-bit digits (Hacker's Delight, divlu).
+     */
+    static long remainder(long high, long low, long m) {
+        if (high == 0 && low >= 0) {
+            return low % m;
+        }
+        int shift = Long.numberOfLeadingZeros(m);
+        long v = m << shift;
+        long vHigh = v >>> 32;
+        long vLow = v & MASK;
+        long u32 = shift == 0 ? high : (high << shift) | (low >>> (64 - shift));
+        long u10 = low << shift;
+        long u1 = u10 >>> 32;
+        long u0 = u10 & MASK;
+
+        long q1 = Long.divideUnsigned(u32, vHigh);
+        long rHat = u32 - q1 * vHigh;
+        while ((q1 >>> 32) != 0 || Long.compareUnsigned(q1 * vLow, (rHat << 32) | u1) > 0) {
+            q1--;
+            rHat += vHigh;
+            if ((rHat >>> 32) != 0) {
+                break;
+            }
+        }
+        long u21 = (u32 << 32) + u1 - q1 * v;
+
+        long q0 = Long.divideUnsigned(u21, vHigh);
+        rHat = u21 - q0 * vHigh;
+        while ((q0 >>> 32) != 0 || Long.compareUnsigned(q0 * vLow, (rHat << 32) | u0) > 0) {
+            q0--;
+            rHat += vHigh;
+            if ((rHat >>> 32) != 0) {
+                break;
+            }
+        }
+        return ((u21 << 32) + u0 - q0 * v) >>> shift;
+    }
+
+    public BigInteger toBigInteger() {
+        if (isSmall) {
+            return BigInteger.valueOf(small);
+        }
+        byte[] bytes = new byte[length * 4];
+        for (int i = 0; i < length; i++) {
+            int word = mag[i];
+            int at = bytes.length - 4 * i;
+            bytes[at - 1] = (byte) word;
+            bytes[at - 2] = (byte) (word >>> 8);
+            bytes[at - 3] = (byte) (word >>> 16);
+            bytes[at - 4] = (byte) (word >>> 24);
+        }
+        return new BigInteger(sign, bytes);
+    }
+
+    @Override
+    public String toString() {
+        return isSmall ? Long.toString(small) : toBigInteger().toString();
+    }
+
+    // |value| into operand; returns the number of words
+    private int operandWords(long value) {
+        long magnitude = value < 0 ? -value : value; // Long.MIN_VALUE stays 2^63 as unsigned
+        operand[0] = (int) magnitude;
+        operand[1] = (int) (magnitude >>> 32);
+        return operand[1] != 0 ? 2 : (operand[0] != 0 ? 1 : 0);
+    }
+
+    // Move the long value into the magnitude words
+    private void spill() {
+        int words = operandWords(small);
+        ensureCapacity(Math.max(words, 2));
+        mag[0] = operand[0];
+        mag[1] = operand[1];
+        length = words;
+        sign = Long.signum(small);
+        isSmall = false;
+    }
+
+    // this += otherSign * magnitude (unsigned); this is in magnitude form
+    private void addLong(int otherSign, long magnitude) {
+        if (otherSign == sign && length >= 2) {
+            // Add the two words and carry up as far as needed
+            ensureCapacity(length + 1);
+            long sum = (mag[0] & MASK) + (magnitude & MASK);
+            mag[0] = (int) sum;
+            sum = (mag[1] & MASK) + (magnitude >>> 32) + (sum >>> 32);
+            mag[1] = (int) sum;
+            for (int i = 2; (sum >>> 32) != 0; i++) {
+                sum = word(i) + 1;
+                mag[i] = (int) sum;
+                if (i == length) {
+                    length++;
+                }
+            }
+        } else if (otherSign == -sign && length > 2) {
+            // |this| >= 2^64 > magnitude: subtract and borrow up as far as needed
+            long difference = (mag[0] & MASK) - (magnitude & MASK);
+            mag[0] = (int) difference;
+            difference = (mag[1] & MASK) - (magnitude >>> 32) - (difference < 0 ? 1 : 0);
+            mag[1] = (int) difference;
+            for (int i = 2; difference < 0; i++) {
+                difference = (mag[i] & MASK) - 1;
+                mag[i] = (int) difference;
+            }
+            normalize();
+        } else {
+            operand[0] = (int) magnitude;
+            operand[1] = (int) (magnitude >>> 32);
+            addWords(otherSign, operand, operand[1] != 0 ? 2 : (operand[0] != 0 ? 1 : 0));
+        }
+    }
+
+    // this += otherSign * other[0, otherLength); this is in magnitude form
+    private void addWords(int otherSign, int[] other, int otherLength) {
+        if (otherSign == 0) {
+            return;
+        }
+        if (sign == 0) {
+            ensureCapacity(otherLength);
+            System.arraycopy(other, 0, mag, 0, otherLength);
+            length = otherLength;
+            sign = otherSign;
+        } else if (sign == otherSign) {
+            addMagnitude(other, otherLength);
+        } else {
+            int cmp = compareMagnitude(other, otherLength);
+            if (cmp == 0) {
+                clear();
+                return;
+            }
+            if (cmp > 0) {
+                subtractMagnitude(other, otherLength);
+            } else {
+                subtractFromMagnitude(other, otherLength);
+                sign = otherSign;
+            }
+        }
+        normalize();
+    }
+
+    private void addMagnitude(int[] other, int otherLength) {
+        int longest = Math.max(length, otherLength);
+        ensureCapacity(longest + 1);
+        long carry = 0;
+        for (int i = 0; i < longest; i++) {
+            long sum = word(i) + (i < otherLength ? other[i] & MASK : 0) + carry;
+            mag[i] = (int) sum;
+            carry = sum >>> 32;
+        }
+        mag[longest] = (int) carry;
+        length = longest + 1;
+    }
+
+    // mag -= other, for |mag| > |other|
+    private void subtractMagnitude(int[] other, int otherLength) {
+        long borrow = 0;
+        for (int i = 0; i < length; i++) {
+            long difference = (mag[i] & MASK) - (i < otherLength ? other[i] & MASK : 0) - borrow;
+            mag[i] = (int) difference;
+            borrow = difference < 0 ? 1 : 0;
+            if (i >= otherLength && borrow == 0) {
+                break;
+            }
+        }
+    }
+
+    // mag = other - mag, for |other| > |mag|
+    private void subtractFromMagnitude(int[] other, int otherLength) {
+        ensureCapacity(otherLength);
+        long borrow = 0;
+        for (int i = 0; i < otherLength; i++) {
+            long difference = (other[i] & MASK) - word(i) - borrow;
+            mag[i] = (int) difference;
+            borrow = difference < 0 ? 1 : 0;
+        }
+        length = otherLength;
+    }
+
+    private int compareMagnitude(int[] other, int otherLength) {
+        if (length != otherLength) {
+            return length > otherLength ? 1 : -1;
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            if (mag[i] != other[i]) {
+                return Integer.compareUnsigned(mag[i], other[i]);
+            }
+        }
+        return 0;
+    }
+
+    private long word(int i) {
+        return i < length ? mag[i] & MASK : 0;
+    }
+
+    private void ensureCapacity(int words) {
+        if (mag.length < words) {
+            mag = Arrays.copyOf(mag, Math.max(words, mag.length * 2));
+        }
+    }
+
+    // Drop leading zero words and go back to the long form when the value fits again
+    private void normalize() {
+        while (length > 0 && mag[length - 1] == 0) {
+            length--;
+        }
+        if (length > 2) {
+            return;
+        }
+        long magnitude = word(0) | (word(1) << 32);
+        if (magnitude >= 0) {
+            small = sign < 0 ? -magnitude : magnitude;
+            isSmall = true;
+        } else if (sign < 0 && magnitude == Long.MIN_VALUE) {
+            small = Long.MIN_VALUE;
+            isSmall = true;
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+        System.out.println("Property checks against BigInteger: " + check(new Random(42), 200_000) + " passed");
+
+        long[] large = new long[count];
+        long[] smallValues = new long[count];
+        Random random = new Random(1);
+        for (int i = 0; i < count; i++) {
+            large[i] = random.nextLong();
+            smallValues[i] = random.nextInt(1_000_000);
+        }
+
+        // The first rounds are warm-up, the last one is reported
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            BigInteger bigSum = sumBigInteger(large);
+            long bigLarge = System.nanoTime() - start;
+            start = System.nanoTime();
+            BigAccumulator accSum = sumAccumulator(large);
+            long accLarge = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            BigInteger bigSmall = sumBigInteger(smallValues);
+            long bigSmallTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            BigAccumulator accSmall = sumAccumulator(smallValues);
+            long accSmallTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long bigPow = powModBigInteger(large, count / 10);
+            long bigPowTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            long accPow = powModAccumulator(large, count / 10);
+            long accPowTime = System.nanoTime() - start;
+
+            if (!bigSum.equals(accSum.toBigInteger()) || !bigSmall.equals(accSmall.toBigInteger()) || bigPow != accPow) {
+                throw new AssertionError("BigAccumulator and BigInteger disagree");
+            }
+            if (round == 2) {
+                System.out.printf("%,d values%n", count);
+                report("sum of random longs", bigLarge, accLarge);
+                report("sum of values < 10^6", bigSmallTime, accSmallTime);
+                report(String.format("%,d powMod, 62-bit modulus", count / 10), bigPowTime, accPowTime);
+            }
+        }
+    }
+
+    private static void report(String name, long bigInteger, long accumulator) {
+        System.out.printf("  %-34s BigInteger %8.1f ms, BigAccumulator %8.1f ms (%.1fx)%n", name,
+                bigInteger / 1e6, accumulator / 1e6, (double) bigInteger / accumulator);
+    }
+
+    private static BigInteger sumBigInteger(long[] values) {
+        BigInteger sum = BigInteger.ZERO;
+        for (long value : values) {
+            sum = sum.add(BigInteger.valueOf(value));
+        }
+        return sum;
+    }
+
+    private static BigAccumulator sumAccumulator(long[] values) {
+        BigAccumulator sum = new BigAccumulator();
+        for (long value : values) {
+            sum.add(value);
+        }
+        return sum;
+    }
+
+    private static final long MODULUS = (1L << 62) - 57;
+
+    private static long powModBigInteger(long[] values, int n) {
+        BigInteger m = BigInteger.valueOf(MODULUS);
+        long hash = 0;
+        for (int i = 0; i < n; i++) {
+            hash += BigInteger.valueOf(values[i]).modPow(BigInteger.valueOf(values[i] >>> 40), m).longValue();
+        }
+        return hash;
+    }
+
+    private static long powModAccumulator(long[] values, int n) {
+        long hash = 0;
+        for (int i = 0; i < n; i++) {
+            hash += powMod(values[i], values[i] >>> 40, MODULUS);
+        }
+        return hash;
+    }
+
+    /**
+     * Random sequences of operations applied to a BigAccumulator and to a BigInteger, compared
+     * after every step. Returns the number of checks.
+     */
+    private static int check(Random random, int steps) {
+        long[] edges = { 0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1,
+                1L << 32, -(1L << 32), MASK, -MASK, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        int checks = 0;
+
+        // 2^64 - 1 then -(2^63 + 1): both magnitudes fill whole words
+        BigInteger first = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        BigInteger second = BigInteger.ONE.shiftLeft(63).add(BigInteger.ONE).negate();
+        BigInteger sum = new BigAccumulator().add(first).add(second).toBigInteger();
+        if (!sum.equals(first.add(second))) {
+            throw new AssertionError("Expected " + first.add(second) + ", got " + sum);
+        }
+        checks++;
+
+        BigAccumulator acc = new BigAccumulator();
+        BigInteger expected = BigInteger.ZERO;
+        for (int step = 0; step < steps; step++) {
+            long value = random.nextInt(4) == 0 ? edges[random.nextInt(edges.length)] : random.nextLong() >> random.nextInt(64);
+            switch (random.nextInt(8)) {
+                case 0:
+                case 1:
+                    acc.add(value);
+                    expected = expected.add(BigInteger.valueOf(value));
+                    break;
+                case 2:
+                case 3:
+                    acc.subtract(value);
+                    expected = expected.subtract(BigInteger.valueOf(value));
+                    break;
+                case 4:
+                    BigInteger big;
+                    if (random.nextBoolean()) {
+                        big = new BigInteger(1 + random.nextInt(300), random);
+                    } else {
+                        // Word-aligned: the top bit of a 32-bit word is set
+                        int bits = 32 * (2 + random.nextInt(8));
+                        big = new BigInteger(bits, random).setBit(bits - 1);
+                    }
+                    big = random.nextBoolean() ? big : big.negate();
+                    acc.add(big);
+                    expected = expected.add(big);
+                    break;
+                case 5:
+                    // Keep the numbers from growing without bound
+                    if (expected.bitLength() < 2000) {
+                        acc.multiply(value);
+                        expected = expected.multiply(BigInteger.valueOf(value));
+                    }
+                    break;
+                case 6:
+                    acc.add(acc);
+                    expected = expected.add(expected);
+                    break;
+                default:
+                    acc.set(value);
+                    expected = BigInteger.valueOf(value);
+                    break;
+            }
+            if (!acc.toBigInteger().equals(expected) || acc.signum() != expected.signum()
+                    || acc.fitsInLong() != (expected.bitLength() < 64)) {
+                throw new AssertionError("Step " + step + ": expected " + expected + ", got " + acc);
+            }
+            long m = Math.max(1, random.nextLong() >>> random.nextInt(63));
+            if (acc.mod(m) != expected.mod(BigInteger.valueOf(m)).longValue()) {
+                throw new AssertionError("Step " + step + ": wrong mod " + m + " of " + expected);
+            }
+            long e = random.nextInt(1000);
+            if (acc.powMod(e, m) != expected.modPow(BigInteger.valueOf(e), BigInteger.valueOf(m)).longValue()) {
+                throw new AssertionError("Step " + step + ": wrong powMod " + e + ", " + m + " of " + expected);
+            }
+            checks += 3;
+        }
+        return checks;
+    }
+}
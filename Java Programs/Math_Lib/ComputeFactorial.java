@@ -4,13 +4,12 @@ class ComputeFactorial{
     public static void main(String[] args) {
         // Given N, Compute its factorial
         // int x = 5;
-        int x = 500;
-        // int ans = 1;
-        BigInteger ans = new BigInteger("1");
-        for(int i=1;i<=x;i++){
-            BigInteger temp = new BigInteger(i+"");
-            ans = ans.multiply(temp);
-        }
+        int x = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        // Multiplying 1..N one at a time is quadratic; FactorialService multiplies a product tree
+        // (see FactorialService.linearFactorial for the loop this used to be)
+        BigInteger ans = new FactorialService(0).factorial(x);
         System.out.println(ans);
     }
-}
\ No newline at end of file
+}
+
+// javac FactorialService.java ComputeFactorial.java
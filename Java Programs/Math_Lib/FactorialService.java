@@ -0,0 +1,201 @@
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Factorials of large N, for when ComputeFactorial's loop gets too slow.
+ *
+ * ComputeFactorial multiplies the running product by 1, 2, ..., N in turn. Each step multiplies
+ * a huge number by a small one, so the total work grows with N squared, and every factor is made
+ * by parsing a String. This class does three things differently:
+ *
+ *  - product tree: (lo, hi] is split in half, each half multiplied out, then the two halves
+ *    multiplied together. The big multiplications are between numbers of similar size, which
+ *    is where BigInteger's Karatsuba / Toom-Cook multiplication pays off. The leaves multiply
+ *    small factors in a long and only then make a BigInteger.valueOf.
+ *  - powers of two: the factors of 2 are taken out of every number and added back with one
+ *    shiftLeft at the end, so the tree multiplies smaller (odd) numbers.
+ *  - fork-join: halves with more than PARALLEL_THRESHOLD factors are multiplied in parallel.
+ *
+ * Results are kept as checkpoints in a small cache (least recently used entry dropped first).
+ * factorial(n) starts from the largest checkpoint k <= n and only multiplies k! by (k, n].
+ *
+ * Usage: java FactorialService [n]
+ */
+public class FactorialService {
+
+    // Ranges with fewer factors are multiplied on the current thread
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    // Factors multiplied in a long before going to BigInteger
+    private static final int LEAF_SIZE = 32;
+
+    private final int maxCheckpoints;
+    private final ForkJoinPool pool;
+
+    // Checkpoints by n, for the nearest lower one; the LinkedHashMap keeps the usage order
+    private final TreeMap<Integer, BigInteger> checkpoints = new TreeMap<>();
+    private final LinkedHashMap<Integer, Boolean> usage = new LinkedHashMap<>(16, 0.75f, true);
+
+    public FactorialService(int maxCheckpoints) {
+        this(maxCheckpoints, ForkJoinPool.commonPool());
+    }
+
+    public FactorialService(int maxCheckpoints, ForkJoinPool pool) {
+        this.maxCheckpoints = maxCheckpoints;
+        this.pool = pool;
+    }
+
+    public BigInteger factorial(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        Map.Entry<Integer, BigInteger> start = nearestCheckpoint(n);
+        int from = start == null ? 0 : start.getKey();
+        BigInteger result = start == null ? BigInteger.ONE : start.getValue();
+        if (from == n) {
+            return result;
+        }
+        result = result.multiply(product(from, n));
+        remember(n, result);
+        return result;
+    }
+
+    /**
+     * The product (lo + 1) * (lo + 2) * ... * hi, that is hi! / lo!.
+     */
+    public BigInteger product(long lo, long hi) {
+        if (hi <= lo) {
+            return BigInteger.ONE;
+        }
+        BigInteger odd = hi - lo > PARALLEL_THRESHOLD
+                ? pool.invoke(new ProductTask(lo, hi))
+                : oddProduct(lo, hi);
+        // Every number gave up its factors of 2; the count of 2s in hi! is hi - bitCount(hi)
+        long twos = (hi - Long.bitCount(hi)) - (lo - Long.bitCount(lo));
+        return odd.shiftLeft((int) twos);
+    }
+
+    private synchronized Map.Entry<Integer, BigInteger> nearestCheckpoint(int n) {
+        Map.Entry<Integer, BigInteger> entry = checkpoints.floorEntry(n);
+        if (entry != null) {
+            usage.get(entry.getKey());
+        }
+        return entry;
+    }
+
+    private synchronized void remember(int n, BigInteger value) {
+        if (maxCheckpoints <= 0) {
+            return;
+        }
+        checkpoints.put(n, value);
+        usage.put(n, Boolean.TRUE);
+        while (usage.size() > maxCheckpoints) {
+            Integer eldest = usage.keySet().iterator().next();
+            usage.remove(eldest);
+            checkpoints.remove(eldest);
+        }
+    }
+
+    // Product of the odd parts of lo + 1 .. hi
+    private static final class ProductTask extends RecursiveTask<BigInteger> {
+        private static final long serialVersionUID = 1L;
+
+        private final long lo;
+        private final long hi;
+
+        ProductTask(long lo, long hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected BigInteger compute() {
+            if (hi - lo <= PARALLEL_THRESHOLD) {
+                return oddProduct(lo, hi);
+            }
+            long mid = (lo + hi) >>> 1;
+            ProductTask left = new ProductTask(lo, mid);
+            left.fork();
+            BigInteger right = new ProductTask(mid, hi).compute();
+            return left.join().multiply(right);
+        }
+    }
+
+    private static BigInteger oddProduct(long lo, long hi) {
+        if (hi - lo <= LEAF_SIZE) {
+            BigInteger result = BigInteger.ONE;
+            long acc = 1;
+            for (long i = lo + 1; i <= hi; i++) {
+                long factor = i >>> Long.numberOfTrailingZeros(i);
+                if (acc > Long.MAX_VALUE / factor) {
+                    result = result.multiply(BigInteger.valueOf(acc));
+                    acc = factor;
+                } else {
+                    acc *= factor;
+                }
+            }
+            return result.multiply(BigInteger.valueOf(acc));
+        }
+        long mid = (lo + hi) >>> 1;
+        return oddProduct(lo, mid).multiply(oddProduct(mid, hi));
+    }
+
+    // ComputeFactorial's loop, for comparison
+    static BigInteger linearFactorial(int n) {
+        BigInteger ans = new BigInteger("1");
+        for (int i = 1; i <= n; i++) {
+            BigInteger temp = new BigInteger(i + "");
+            ans = ans.multiply(temp);
+        }
+        return ans;
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        // Small values against the loop, including the leaf and threshold edges
+        FactorialService check = new FactorialService(0);
+        for (int i : new int[] { 0, 1, 2, 3, 20, 21, 33, 64, 65, 1000, 2049, 5000 }) {
+            if (!check.factorial(i).equals(linearFactorial(i))) {
+                throw new AssertionError("Wrong result for " + i + "!");
+            }
+        }
+
+        long start = System.nanoTime();
+        BigInteger expected = linearFactorial(n);
+        long linearTime = System.nanoTime() - start;
+
+        FactorialService service = new FactorialService(8);
+        start = System.nanoTime();
+        BigInteger result = service.factorial(n);
+        long treeTime = System.nanoTime() - start;
+
+        if (!result.equals(expected)) {
+            throw new AssertionError("Product tree and loop disagree for " + n + "!");
+        }
+
+        // A nearby query starts from the checkpoint for n
+        start = System.nanoTime();
+        BigInteger nearby = service.factorial(n + 100);
+        long nearbyTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        service.factorial(n);
+        long repeatTime = System.nanoTime() - start;
+
+        if (!nearby.equals(expected.multiply(service.product(n, n + 100)))) {
+            throw new AssertionError("Checkpoint resume gave a different result");
+        }
+
+        System.out.printf("%d! has %,d bits%n", n, result.bitLength());
+        System.out.printf("  %-26s: %10.3f ms%n", "linear loop", linearTime / 1e6);
+        System.out.printf("  %-26s: %10.3f ms  (%.0fx, %d CPUs)%n", "product tree", treeTime / 1e6,
+                (double) linearTime / treeTime, Runtime.getRuntime().availableProcessors());
+        System.out.printf("  %-26s: %10.3f ms%n", (n + 100) + "! from checkpoint", nearbyTime / 1e6);
+        System.out.printf("  %-26s: %10.3f ms%n", n + "! again", repeatTime / 1e6);
+    }
+}
@@ -0,0 +1,380 @@
+package Math_Lib;
+
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Faster sin, cos, tan, log, log10, exp and pow for callers that can accept a small, known error
+ * (signal processing, plots, simulations ...) instead of the last-bit accuracy of Math.
+ *
+ * Each function looks up a table entry near x and corrects it with a short polynomial:
+ *
+ *  - sin / cos: x = k * (2 pi / N) + d with |d| <= pi / N, then
+ *        sin(x) = sin(a) cos(d) + cos(a) sin(d),  sin(d) ~ d - d^3/6,  cos(d) ~ 1 - d^2/2
+ *    error <= d^4/24 + d^5/120. tan is sin / cos from the same reduction.
+ *  - log: x = 2^e * m, m in [1, 2) and c the centre of m's table interval, r = (m - c) / c,
+ *        log(x) = e ln 2 + log(c) + log(1 + r),  log(1 + r) ~ r - r^2/2 + r^3/3
+ *    error <= r^4 / (4 (1 - r)). log10 is log / ln 10.
+ *  - exp: x = (k / N) ln 2 + r with |r| <= ln 2 / 2N, then
+ *        exp(x) = 2^(k / N) (1 + r + r^2/2 + r^3/6)
+ *    relative error <= 1.01 r^4 / 24.
+ *  - pow(x, y) = exp(y log(x)).
+ *
+ * The constructor takes the error bound and makes each table just large enough (the smallest
+ * power of two) for the formula above to stay within it. Guaranteed bounds, on top of which comes
+ * the rounding of the result itself (up to 2 ulps):
+ *
+ *   sin, cos, log, log10 : absolute error <= maxError
+ *   exp                  : relative error <= maxError
+ *   tan                  : absolute error <= maxError / cos^2(x) (it grows towards the poles)
+ *   pow                  : relative error <= maxError (1 + |y|) + |y log x| 2^-52
+ *
+ * Arguments outside the table ranges (|x| > 1e5 for sin, cos, tan, |x| > 708 for exp, x <= 0,
+ * subnormal, infinite or NaN for log) go to Math, so they are exact rather than approximate.
+ *
+ * Unlike the other files in Math_Lib, which are in the default package, this one is in package
+ * Math_Lib. The only reason is JMH_Benchmarks: it compiles this same file, and its
+ * FastMathBenchmark can import a class in a named package but not one in the default package.
+ * So it is compiled and run from "Java Programs", not from Math_Lib:
+ *   javac -d out Math_Lib/FastMath.java
+ *   java -cp out Math_Lib.FastMath [maxError]
+ */
+public class FastMath {
+
+    private static final double TRIG_LIMIT = 1e5;
+    private static final double EXP_LIMIT = 708;
+    // 2 pi and ln 2 as the nearest double plus the rest
+    private static final double TWO_PI_TAIL = 2.4492935982947064e-16;
+    private static final double LN2 = Math.log(2);
+    private static final double LN2_TAIL = 2.3190468138462996e-17;
+    private static final double LN2_HI = high(LN2);
+    private static final double LN2_LO = (LN2 - LN2_HI) + LN2_TAIL;
+    private static final double INV_LN10 = 1 / Math.log(10);
+    private static final long MANTISSA = (1L << 52) - 1;
+    private static final long ONE = Double.doubleToRawLongBits(1.0);
+
+    // Adding 1.5 * 2^52 rounds to an integer, which then sits in the low bits of the double
+    private static final double SHIFTER = 0x1.8p52;
+
+    private final double maxError;
+
+    private final double[] sinTable;
+    private final double[] cosTable;
+    private final int trigMask;
+    private final double trigScale;
+    private final double trigStepHi;
+    private final double trigStepMid;
+    private final double trigStepLo;
+
+    private final int logBits;
+    private final double[] logCentre;
+    private final double[] logInverse;
+    private final double[] logOfCentre;
+
+    private final int expBits;
+    private final double[] expTable;
+    private final double expScale;
+    private final double expStepHi;
+    private final double expStepMid;
+    private final double expStepLo;
+
+    public FastMath(double maxError) {
+        if (!(maxError >= 1e-14 && maxError <= 1e-2)) {
+            throw new IllegalArgumentException("maxError must be between 1e-14 and 1e-2: " + maxError);
+        }
+        this.maxError = maxError;
+
+        // sin / cos: N points on the circle, d <= pi / N
+        int trigBits = 2;
+        while (trigError(Math.PI / (1 << trigBits)) > maxError) {
+            trigBits++;
+        }
+        int n = 1 << trigBits;
+        double step = 2 * Math.PI / n;
+        sinTable = new double[n];
+        cosTable = new double[n];
+        for (int j = 0; j < n; j++) {
+            sinTable[j] = Math.sin(j * step);
+            cosTable[j] = Math.cos(j * step);
+        }
+        trigMask = n - 1;
+        trigScale = n / (2 * Math.PI);
+        // The step in three parts, so k * step stays exact to well below the error bound
+        trigStepHi = high(step);
+        trigStepMid = step - trigStepHi;
+        trigStepLo = TWO_PI_TAIL / n;
+
+        // log: 2^logBits intervals of [1, 2), r <= 2^-(logBits + 1)
+        int bits = 1;
+        while (logError(Math.scalb(1.0, -(bits + 1))) > maxError) {
+            bits++;
+        }
+        logBits = bits;
+        logCentre = new double[1 << bits];
+        logInverse = new double[1 << bits];
+        logOfCentre = new double[1 << bits];
+        for (int j = 0; j < 1 << bits; j++) {
+            double centre = 1 + (j + 0.5) / (1 << bits);
+            logCentre[j] = centre;
+            logInverse[j] = 1 / centre;
+            logOfCentre[j] = Math.log(centre);
+        }
+
+        // exp: N steps per power of two, r <= ln 2 / 2N
+        bits = 1;
+        while (expError(LN2 / (2 << bits)) > maxError) {
+            bits++;
+        }
+        expBits = bits;
+        expTable = new double[1 << bits];
+        for (int j = 0; j < 1 << bits; j++) {
+            expTable[j] = Math.pow(2, (double) j / (1 << bits));
+        }
+        expScale = (1 << bits) / LN2;
+        double expStep = LN2 / (1 << bits);
+        expStepHi = high(expStep);
+        expStepMid = expStep - expStepHi;
+        expStepLo = LN2_TAIL / (1 << bits);
+    }
+
+    private static double trigError(double d) {
+        return Math.pow(d, 4) / 24 + Math.pow(d, 5) / 120;
+    }
+
+    private static double logError(double r) {
+        return Math.pow(r, 4) / (4 * (1 - r));
+    }
+
+    private static double expError(double r) {
+        return 1.01 * Math.pow(r, 4) / 24;
+    }
+
+    // The leading 22 bits of x, so that k * high(x) is exact for |k| < 2^31
+    private static double high(double x) {
+        return Double.longBitsToDouble(Double.doubleToRawLongBits(x) & ~((1L << 31) - 1));
+    }
+
+    public double maxError() {
+        return maxError;
+    }
+
+    public double sin(double x) {
+        if (!(Math.abs(x) <= TRIG_LIMIT)) {
+            return Math.sin(x);
+        }
+        double t = x * trigScale + SHIFTER;
+        int j = (int) Double.doubleToRawLongBits(t) & trigMask;
+        double k = t - SHIFTER;
+        double d = ((x - k * trigStepHi) - k * trigStepMid) - k * trigStepLo;
+        double d2 = d * d;
+        return sinTable[j] * (1 - 0.5 * d2) + cosTable[j] * (d - d * d2 * (1.0 / 6));
+    }
+
+    public double cos(double x) {
+        if (!(Math.abs(x) <= TRIG_LIMIT)) {
+            return Math.cos(x);
+        }
+        double t = x * trigScale + SHIFTER;
+        int j = (int) Double.doubleToRawLongBits(t) & trigMask;
+        double k = t - SHIFTER;
+        double d = ((x - k * trigStepHi) - k * trigStepMid) - k * trigStepLo;
+        double d2 = d * d;
+        return cosTable[j] * (1 - 0.5 * d2) - sinTable[j] * (d - d * d2 * (1.0 / 6));
+    }
+
+    public double tan(double x) {
+        if (!(Math.abs(x) <= TRIG_LIMIT)) {
+            return Math.tan(x);
+        }
+        double t = x * trigScale + SHIFTER;
+        int j = (int) Double.doubleToRawLongBits(t) & trigMask;
+        double k = t - SHIFTER;
+        double d = ((x - k * trigStepHi) - k * trigStepMid) - k * trigStepLo;
+        double d2 = d * d;
+        double cosD = 1 - 0.5 * d2;
+        double sinD = d - d * d2 * (1.0 / 6);
+        return (sinTable[j] * cosD + cosTable[j] * sinD) / (cosTable[j] * cosD - sinTable[j] * sinD);
+    }
+
+    public double log(double x) {
+        if (!(x >= Double.MIN_NORMAL && x < Double.POSITIVE_INFINITY)) {
+            return Math.log(x);
+        }
+        long bits = Double.doubleToRawLongBits(x);
+        int e = (int) (bits >>> 52) - 1023;
+        int j = (int) ((bits & MANTISSA) >>> (52 - logBits));
+        double m = Double.longBitsToDouble((bits & MANTISSA) | ONE);
+        double r = (m - logCentre[j]) * logInverse[j];
+        double log1p = r - r * r * (0.5 - r * (1.0 / 3));
+        return e * LN2_HI + (logOfCentre[j] + (log1p + e * LN2_LO));
+    }
+
+    public double log10(double x) {
+        return log(x) * INV_LN10;
+    }
+
+    public double exp(double x) {
+        if (!(Math.abs(x) <= EXP_LIMIT)) {
+            return Math.exp(x);
+        }
+        double t = x * expScale + SHIFTER;
+        int k = (int) Double.doubleToRawLongBits(t);
+        double kd = t - SHIFTER;
+        double r = ((x - kd * expStepHi) - kd * expStepMid) - kd * expStepLo;
+        int j = k & ((1 << expBits) - 1);
+        long e = k >> expBits;
+        double p = 1 + r * (1 + r * (0.5 + r * (1.0 / 6)));
+        return expTable[j] * p * Double.longBitsToDouble((e + 1023) << 52);
+    }
+
+    public double pow(double x, double y) {
+        if (x > 0 && x < Double.POSITIVE_INFINITY && Math.abs(y) < Double.POSITIVE_INFINITY) {
+            return exp(y * log(x));
+        }
+        return Math.pow(x, y);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FastMath(maxError=%.0e: %d sin/cos, %d log, %d exp entries, %,d bytes)", maxError,
+                sinTable.length, logCentre.length, expTable.length,
+                8L * (2 * sinTable.length + 3 * logCentre.length + expTable.length));
+    }
+
+    public static void main(String[] args) {
+        double[] bounds = args.length > 0
+                ? new double[] { Double.parseDouble(args[0]) }
+                : new double[] { 1e-4, 1e-7, 1e-10, 1e-13 };
+
+        // Accuracy: the documented bound on a million random points per function and bound
+        Random random = new Random(11);
+        int samples = 1_000_000;
+        for (double bound : bounds) {
+            FastMath fast = new FastMath(bound);
+            System.out.println(fast);
+            checkAbsolute("sin", fast::sin, Math::sin, bound, random, -20, 20, samples);
+            checkAbsolute("cos", fast::cos, Math::cos, bound, random, -20, 20, samples);
+            checkAbsolute("sin, large x", fast::sin, Math::sin, bound, random, -TRIG_LIMIT, TRIG_LIMIT, samples);
+            checkTan(fast, bound, random, samples);
+            checkAbsolute("log", fast::log, Math::log, bound, random, 1e-300, 10, samples);
+            checkAbsolute("log, near 1", fast::log, Math::log, bound, random, 0.5, 2, samples);
+            checkAbsolute("log10", fast::log10, Math::log10, bound, random, 1e-3, 1e6, samples);
+            checkRelative("exp", fast::exp, Math::exp, bound, random, -EXP_LIMIT, EXP_LIMIT, samples);
+            checkPow(fast, bound, random, samples);
+        }
+
+        benchmark(new FastMath(bounds.length == 1 ? bounds[0] : 1e-7));
+    }
+
+    private static void checkAbsolute(String name, DoubleUnaryOperator fast, DoubleUnaryOperator exact, double bound,
+                                      Random random, double from, double to, int samples) {
+        double worst = 0;
+        for (int i = 0; i < samples; i++) {
+            double x = from + random.nextDouble() * (to - from);
+            double expected = exact.applyAsDouble(x);
+            double error = Math.abs(fast.applyAsDouble(x) - expected);
+            if (error > bound + 2 * Math.ulp(expected)) {
+                throw new AssertionError(name + "(" + x + ") error " + error + " exceeds " + bound);
+            }
+            worst = Math.max(worst, error);
+        }
+        System.out.printf("  %-14s max abs error %.3e%n", name, worst);
+    }
+
+    private static void checkRelative(String name, DoubleUnaryOperator fast, DoubleUnaryOperator exact, double bound,
+                                      Random random, double from, double to, int samples) {
+        double worst = 0;
+        for (int i = 0; i < samples; i++) {
+            double x = from + random.nextDouble() * (to - from);
+            double expected = exact.applyAsDouble(x);
+            double error = Math.abs(fast.applyAsDouble(x) - expected) / expected;
+            if (error > bound + 4 * Math.ulp(1.0)) {
+                throw new AssertionError(name + "(" + x + ") relative error " + error + " exceeds " + bound);
+            }
+            worst = Math.max(worst, error);
+        }
+        System.out.printf("  %-14s max rel error %.3e%n", name, worst);
+    }
+
+    private static void checkTan(FastMath fast, double bound, Random random, int samples) {
+        double worst = 0;
+        for (int i = 0; i < samples; i++) {
+            double x = (random.nextDouble() - 0.5) * 40;
+            double cos = Math.cos(x);
+            double expected = Math.tan(x);
+            // Scaled back to the error of sin and cos
+            double error = Math.abs(fast.tan(x) - expected) * cos * cos;
+            if (error > bound + 2 * Math.ulp(Math.abs(expected) * cos * cos) + 4 * Math.ulp(1.0)) {
+                throw new AssertionError("tan(" + x + ") error " + error + " exceeds " + bound + " / cos^2");
+            }
+            worst = Math.max(worst, error);
+        }
+        System.out.printf("  %-14s max abs error * cos^2 %.3e%n", "tan", worst);
+    }
+
+    private static void checkPow(FastMath fast, double bound, Random random, int samples) {
+        double worst = 0;
+        for (int i = 0; i < samples; i++) {
+            double x = random.nextDouble() * 100;
+            double y = (random.nextDouble() - 0.5) * 20;
+            double expected = Math.pow(x, y);
+            if (expected == 0 || Double.isInfinite(expected)) {
+                continue;
+            }
+            double error = Math.abs(fast.pow(x, y) - expected) / expected;
+            double allowed = bound * (1 + Math.abs(y)) + Math.abs(y * Math.log(x)) * Math.ulp(1.0) + 4 * Math.ulp(1.0);
+            if (error > allowed) {
+                throw new AssertionError("pow(" + x + ", " + y + ") relative error " + error + " exceeds " + allowed);
+            }
+            worst = Math.max(worst, error / (1 + Math.abs(y)));
+        }
+        System.out.printf("  %-14s max rel error / (1 + |y|) %.3e%n", "pow", worst);
+    }
+
+    /**
+     * A quick timing loop: ns per call over a million arguments, best of 5 rounds. The JMH
+     * module has the same comparison as FastMathBenchmark, with forks and proper warm-up.
+     */
+    private static void benchmark(FastMath fast) {
+        int n = 1_000_000;
+        Random random = new Random(3);
+        double[] angles = new double[n];
+        double[] positives = new double[n];
+        double[] exponents = new double[n];
+        for (int i = 0; i < n; i++) {
+            angles[i] = (random.nextDouble() - 0.5) * 20;
+            positives[i] = random.nextDouble() * 1000 + 1e-3;
+            exponents[i] = (random.nextDouble() - 0.5) * 40;
+        }
+
+        System.out.printf("ns per call, %s%n", fast);
+        System.out.printf("  %-6s %8s %8s%n", "", "Math", "FastMath");
+        report("sin", time(angles, Math::sin), time(angles, fast::sin));
+        report("cos", time(angles, Math::cos), time(angles, fast::cos));
+        report("tan", time(angles, Math::tan), time(angles, fast::tan));
+        report("log", time(positives, Math::log), time(positives, fast::log));
+        report("log10", time(positives, Math::log10), time(positives, fast::log10));
+        report("exp", time(exponents, Math::exp), time(exponents, fast::exp));
+        report("pow", time(positives, x -> Math.pow(x, 1.7)), time(positives, x -> fast.pow(x, 1.7)));
+    }
+
+    private static void report(String name, double exact, double fast) {
+        System.out.printf("  %-6s %8.2f %8.2f  (%.1fx)%n", name, exact, fast, exact / fast);
+    }
+
+    private static double time(double[] args, DoubleUnaryOperator f) {
+        long best = Long.MAX_VALUE;
+        double sink = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (double x : args) {
+                sink += f.applyAsDouble(x);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+        return (double) best / args.length;
+    }
+}
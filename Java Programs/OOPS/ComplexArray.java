@@ -0,0 +1,465 @@
+package OOPS;
+
+import java.util.Random;
+
+import Benchmark.Measurement;
+
+/**
+ * An array of complex numbers stored as two double[] arrays, one for the real parts and one for
+ * the imaginary parts (structure of arrays).
+ *
+ * ComplexNumber (OOPS/ComplexNumber.java, used by operationOnComplexNum) returns a new object
+ * from every add, multiply and divide, so working on a signal of a million samples means a
+ * million allocations per operation and a million pointers to follow. Here every operation works
+ * in place on the two arrays, in plain loops over primitives that the JIT can unroll and
+ * vectorize, and allocates nothing.
+ *
+ * Compile and run from "Java Programs":
+ *   javac -d out OOPS/ComplexArray.java OOPS/ComplexNumber.java Benchmark/Measurement.java
+ *   java -cp out OOPS.ComplexArray [size]
+ */
+public final class ComplexArray {
+
+    private final double[] re;
+    private final double[] im;
+    private final int length;
+
+    // cos and sin of 2 pi k / length for k < length / 2, built on the first fft()
+    private double[] cosTable;
+    private double[] sinTable;
+
+    public ComplexArray(int length) {
+        this(new double[length], new double[length]);
+    }
+
+    /**
+     * Wraps the two arrays, without copying: changes show up in both.
+     */
+    public ComplexArray(double[] re, double[] im) {
+        if (re.length != im.length) {
+            throw new IllegalArgumentException("Real and imaginary parts differ in length: " + re.length + " and "
+                    + im.length);
+        }
+        this.re = re;
+        this.im = im;
+        this.length = re.length;
+    }
+
+    public static ComplexArray of(ComplexNumber[] values) {
+        ComplexArray array = new ComplexArray(values.length);
+        for (int i = 0; i < values.length; i++) {
+            array.re[i] = values[i].real;
+            array.im[i] = values[i].imaginary;
+        }
+        return array;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public double real(int i) {
+        return re[i];
+    }
+
+    public double imaginary(int i) {
+        return im[i];
+    }
+
+    public ComplexArray set(int i, double real, double imaginary) {
+        re[i] = real;
+        im[i] = imaginary;
+        return this;
+    }
+
+    public double[] realParts() {
+        return re;
+    }
+
+    public double[] imaginaryParts() {
+        return im;
+    }
+
+    public ComplexArray copy() {
+        return new ComplexArray(re.clone(), im.clone());
+    }
+
+    public ComplexArray add(ComplexArray x) {
+        checkLength(x);
+        double[] xr = x.re, xi = x.im;
+        for (int i = 0; i < length; i++) {
+            re[i] += xr[i];
+            im[i] += xi[i];
+        }
+        return this;
+    }
+
+    public ComplexArray subtract(ComplexArray x) {
+        checkLength(x);
+        double[] xr = x.re, xi = x.im;
+        for (int i = 0; i < length; i++) {
+            re[i] -= xr[i];
+            im[i] -= xi[i];
+        }
+        return this;
+    }
+
+    public ComplexArray multiply(ComplexArray x) {
+        // (a + bi)(c + di) = (ac - bd) + (ad + bc)i
+        checkLength(x);
+        double[] xr = x.re, xi = x.im;
+        for (int i = 0; i < length; i++) {
+            double a = re[i], b = im[i], c = xr[i], d = xi[i];
+            re[i] = a * c - b * d;
+            im[i] = a * d + b * c;
+        }
+        return this;
+    }
+
+    public ComplexArray divide(ComplexArray x) {
+        // (a + bi) / (c + di) = [(ac + bd) + (bc - ad)i] / (c^2 + d^2), one division per element
+        checkLength(x);
+        double[] xr = x.re, xi = x.im;
+        for (int i = 0; i < length; i++) {
+            double a = re[i], b = im[i], c = xr[i], d = xi[i];
+            double scale = 1.0 / (c * c + d * d);
+            re[i] = (a * c + b * d) * scale;
+            im[i] = (b * c - a * d) * scale;
+        }
+        return this;
+    }
+
+    public ComplexArray scale(double factor) {
+        for (int i = 0; i < length; i++) {
+            re[i] *= factor;
+            im[i] *= factor;
+        }
+        return this;
+    }
+
+    public ComplexArray conjugate() {
+        for (int i = 0; i < length; i++) {
+            im[i] = -im[i];
+        }
+        return this;
+    }
+
+    /**
+     * |z| of every element into out, which is returned. Uses sqrt(a^2 + b^2) rather than
+     * Math.hypot, which is several times slower and only matters near the ends of double range.
+     */
+    public double[] magnitude(double[] out) {
+        if (out.length < length) {
+            throw new IllegalArgumentException("Output holds " + out.length + " values, need " + length);
+        }
+        for (int i = 0; i < length; i++) {
+            out[i] = Math.sqrt(re[i] * re[i] + im[i] * im[i]);
+        }
+        return out;
+    }
+
+    public double[] magnitude() {
+        return magnitude(new double[length]);
+    }
+
+    /**
+     * In-place radix-2 FFT (iterative Cooley-Tukey): a bit-reversal permutation, then log2(n)
+     * passes of butterflies. The length must be a power of two. The twiddle factors are computed
+     * once per array, with Math.cos/sin for each one rather than by repeated multiplication, which
+     * would let the rounding errors add up.
+     */
+    public ComplexArray fft() {
+        transform(false);
+        return this;
+    }
+
+    /**
+     * The inverse of fft(), including the 1/n scaling.
+     */
+    public ComplexArray inverseFft() {
+        transform(true);
+        return scale(1.0 / length);
+    }
+
+    private void transform(boolean inverse) {
+        if (Integer.bitCount(length) > 1) {
+            throw new IllegalArgumentException("FFT length must be a power of two: " + length);
+        }
+        if (length <= 1) {
+            return;
+        }
+        buildTables();
+        bitReverse();
+        double sign = inverse ? 1 : -1;
+        for (int size = 2; size <= length; size <<= 1) {
+            int half = size >> 1;
+            int step = length / size;
+            for (int start = 0; start < length; start += size) {
+                for (int k = 0, t = 0; k < half; k++, t += step) {
+                    double wr = cosTable[t];
+                    double wi = sign * sinTable[t];
+                    int top = start + k;
+                    int bottom = top + half;
+                    double br = re[bottom] * wr - im[bottom] * wi;
+                    double bi = re[bottom] * wi + im[bottom] * wr;
+                    re[bottom] = re[top] - br;
+                    im[bottom] = im[top] - bi;
+                    re[top] += br;
+                    im[top] += bi;
+                }
+            }
+        }
+    }
+
+    private void buildTables() {
+        if (cosTable != null) {
+            return;
+        }
+        int half = length / 2;
+        cosTable = new double[half];
+        sinTable = new double[half];
+        for (int k = 0; k < half; k++) {
+            double angle = 2 * Math.PI * k / length;
+            cosTable[k] = Math.cos(angle);
+            sinTable[k] = Math.sin(angle);
+        }
+    }
+
+    private void bitReverse() {
+        int shift = Integer.numberOfLeadingZeros(length) + 1;
+        for (int i = 0; i < length; i++) {
+            int j = Integer.reverse(i) >>> shift;
+            if (j > i) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+    }
+
+    private void checkLength(ComplexArray x) {
+        if (x.length != length) {
+            throw new IllegalArgumentException("Lengths differ: " + length + " and " + x.length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(re[i]).append(" + ").append(im[i]).append('i');
+        }
+        return sb.append(']').toString();
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 16;
+        Random random = new Random(5);
+
+        check(random);
+        System.out.println("Checks against ComplexNumber and a direct DFT passed");
+
+        ComplexNumber[] a = randomNumbers(random, size);
+        ComplexNumber[] b = randomNumbers(random, size);
+        ComplexArray x = ComplexArray.of(a);
+        ComplexArray y = ComplexArray.of(b);
+
+        // The first rounds are warm-up, the last one is reported
+        int rounds = 20;
+        ComplexArray work = x.copy();
+        for (int round = 0; round < 3; round++) {
+            boolean report = round == 2;
+            Measurement objects = Measurement.start();
+            ComplexNumber[] result = null;
+            for (int r = 0; r < rounds; r++) {
+                result = elementwiseObjects(a, b);
+            }
+            objects.stop();
+
+            Measurement arrays = Measurement.start();
+            for (int r = 0; r < rounds; r++) {
+                elementwiseArrays(work, x, y);
+            }
+            arrays.stop();
+
+            if (report) {
+                System.out.printf("(a * b + a) / b over %,d elements, %d rounds:%n", size, rounds);
+                System.out.printf("  ComplexNumber[] : %s%n", objects);
+                System.out.printf("  ComplexArray    : %s%n", arrays);
+                System.out.println("  first element: " + result[0] + " / " + work.real(0) + " + " + work.imaginary(0)
+                        + "i");
+            }
+        }
+
+        int fftSize = Integer.highestOneBit(size);
+        ComplexNumber[] signal = randomNumbers(random, fftSize);
+        ComplexArray original = ComplexArray.of(signal);
+        ComplexArray transformed = original.copy();
+        // Both versions look their twiddle factors up in a table built once, so the timings
+        // compare the data layout rather than calls to cos and sin
+        ComplexNumber[] twiddles = twiddles(fftSize);
+        transformed.fft();
+        for (int round = 0; round < 3; round++) {
+            boolean report = round == 2;
+            Measurement objects = Measurement.start();
+            for (int r = 0; r < rounds; r++) {
+                fftObjects(signal.clone(), twiddles);
+            }
+            objects.stop();
+
+            Measurement arrays = Measurement.start();
+            for (int r = 0; r < rounds; r++) {
+                System.arraycopy(original.re, 0, transformed.re, 0, fftSize);
+                System.arraycopy(original.im, 0, transformed.im, 0, fftSize);
+                transformed.fft();
+            }
+            arrays.stop();
+
+            if (report) {
+                System.out.printf("FFT of %,d points, %d rounds:%n", fftSize, rounds);
+                System.out.printf("  ComplexNumber[] : %s%n", objects);
+                System.out.printf("  ComplexArray    : %s%n", arrays);
+            }
+        }
+    }
+
+    // a[i] = (a[i] * b[i] + a[i]) / b[i], the way ComplexNumber is used: a new object per step
+    private static ComplexNumber[] elementwiseObjects(ComplexNumber[] a, ComplexNumber[] b) {
+        ComplexNumber[] result = new ComplexNumber[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i].multiply(b[i]).add(a[i]).divide(b[i]);
+        }
+        return result;
+    }
+
+    private static void elementwiseArrays(ComplexArray work, ComplexArray a, ComplexArray b) {
+        System.arraycopy(a.re, 0, work.re, 0, a.length);
+        System.arraycopy(a.im, 0, work.im, 0, a.length);
+        work.multiply(b).add(a).divide(b);
+    }
+
+    // e^(-2 pi i k / n) for k < n / 2, as fft() keeps them in cosTable and sinTable
+    private static ComplexNumber[] twiddles(int n) {
+        ComplexNumber[] w = new ComplexNumber[n / 2];
+        for (int k = 0; k < w.length; k++) {
+            double angle = -2 * Math.PI * k / n;
+            w[k] = new ComplexNumber((float) Math.cos(angle), (float) Math.sin(angle));
+        }
+        return w;
+    }
+
+    // The same radix-2 FFT written with ComplexNumber, for comparison
+    private static void fftObjects(ComplexNumber[] x, ComplexNumber[] twiddles) {
+        int n = x.length;
+        int shift = Integer.numberOfLeadingZeros(n) + 1;
+        for (int i = 0; i < n; i++) {
+            int j = Integer.reverse(i) >>> shift;
+            if (j > i) {
+                ComplexNumber t = x[i];
+                x[i] = x[j];
+                x[j] = t;
+            }
+        }
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1;
+            int step = n / size;
+            for (int start = 0; start < n; start += size) {
+                for (int k = 0; k < half; k++) {
+                    ComplexNumber b = x[start + k + half].multiply(twiddles[k * step]);
+                    x[start + k + half] = x[start + k].subtract(b);
+                    x[start + k] = x[start + k].add(b);
+                }
+            }
+        }
+    }
+
+    private static ComplexNumber[] randomNumbers(Random random, int n) {
+        ComplexNumber[] values = new ComplexNumber[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = new ComplexNumber(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+        }
+        return values;
+    }
+
+    private static void check(Random random) {
+        int n = 257;
+        ComplexNumber[] a = randomNumbers(random, n);
+        ComplexNumber[] b = randomNumbers(random, n);
+        ComplexArray x = ComplexArray.of(a);
+        ComplexArray y = ComplexArray.of(b);
+        ComplexArray sum = x.copy().add(y);
+        ComplexArray difference = x.copy().subtract(y);
+        ComplexArray product = x.copy().multiply(y);
+        ComplexArray quotient = x.copy().divide(y);
+        ComplexArray conjugate = x.copy().conjugate();
+        double[] magnitude = x.magnitude();
+        for (int i = 0; i < n; i++) {
+            // ComplexNumber computes in float
+            checkClose(sum, i, a[i].add(b[i]), 1e-5);
+            checkClose(difference, i, a[i].subtract(b[i]), 1e-5);
+            checkClose(product, i, a[i].multiply(b[i]), 1e-5);
+            checkClose(quotient, i, a[i].divide(b[i]), 1e-5 * Math.max(1, Math.abs(quotient.re[i]) + Math.abs(quotient.im[i])));
+            checkClose(conjugate, i, new ComplexNumber(a[i].real, -a[i].imaginary), 0);
+            if (Math.abs(magnitude[i] - Math.hypot(a[i].real, a[i].imaginary)) > 1e-12) {
+                throw new AssertionError("magnitude differs at " + i);
+            }
+        }
+
+        for (int size = 1; size <= 1024; size <<= 1) {
+            ComplexArray signal = new ComplexArray(size);
+            for (int i = 0; i < size; i++) {
+                signal.set(i, random.nextGaussian(), random.nextGaussian());
+            }
+            ComplexArray spectrum = signal.copy().fft();
+            ComplexArray expected = dft(signal);
+            double tolerance = 1e-12 * size * (1 + Integer.numberOfTrailingZeros(size));
+            for (int i = 0; i < size; i++) {
+                if (Math.abs(spectrum.re[i] - expected.re[i]) > tolerance
+                        || Math.abs(spectrum.im[i] - expected.im[i]) > tolerance) {
+                    throw new AssertionError("FFT of size " + size + " differs from the DFT at " + i);
+                }
+            }
+            spectrum.inverseFft();
+            for (int i = 0; i < size; i++) {
+                if (Math.abs(spectrum.re[i] - signal.re[i]) > 1e-12 || Math.abs(spectrum.im[i] - signal.im[i]) > 1e-12) {
+                    throw new AssertionError("Inverse FFT of size " + size + " does not give the signal back at " + i);
+                }
+            }
+        }
+
+        // The object version used in the benchmark computes the same transform, in float
+        ComplexNumber[] objects = randomNumbers(random, 256);
+        ComplexArray arrays = ComplexArray.of(objects).fft();
+        fftObjects(objects, twiddles(objects.length));
+        for (int i = 0; i < objects.length; i++) {
+            checkClose(arrays, i, objects[i], 1e-4);
+        }
+    }
+
+    // X[k] = sum of x[j] e^(-2 pi i jk / n), straight from the definition
+    private static ComplexArray dft(ComplexArray x) {
+        int n = x.length;
+        ComplexArray out = new ComplexArray(n);
+        for (int k = 0; k < n; k++) {
+            double sr = 0, si = 0;
+            for (int j = 0; j < n; j++) {
+                double angle = -2 * Math.PI * ((long) j * k % n) / n;
+                double c = Math.cos(angle), s = Math.sin(angle);
+                sr += x.re[j] * c - x.im[j] * s;
+                si += x.re[j] * s + x.im[j] * c;
+            }
+            out.set(k, sr, si);
+        }
+        return out;
+    }
+
+    private static void checkClose(ComplexArray array, int i, ComplexNumber expected, double tolerance) {
+        if (Math.abs(array.re[i] - expected.real) > tolerance || Math.abs(array.im[i] - expected.imaginary) > tolerance) {
+            throw new AssertionError("Element " + i + " is " + array.re[i] + " + " + array.im[i] + "i, expected "
+                    + expected);
+        }
+    }
+}
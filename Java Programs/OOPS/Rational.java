@@ -0,0 +1,787 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import Benchmark.Measurement;
+
+/**
+ * An exact fraction that does not overflow: what Fraction in FractionOperations would need to be
+ * used for real sums.
+ *
+ * Fraction keeps int numerator and denominator and never reduces them, so after a few additions
+ * the denominator is the product of all the denominators so far and the int arithmetic silently
+ * wraps around. Rational instead:
+ *
+ *  - is always normalized: denominator > 0 and gcd(numerator, denominator) = 1 (binary GCD),
+ *    so the numbers stay as small as the value allows and equal values are equal objects
+ *  - works on two longs with overflow-checked arithmetic (Math.multiplyExact and friends), and
+ *    moves to BigInteger only for a result that does not fit; results that fit again move back
+ *  - keeps the intermediate products small by dividing by common factors before multiplying
+ *    (Knuth, TAOCP 4.5.1)
+ *
+ * Rational is immutable like Fraction. Rational.Accumulator is the mutable counterpart for sums
+ * of many terms: while the sum fits in longs, adding a term allocates nothing.
+ *
+ * Usage (from OOPS; Measurement is shared with the other allocation benchmarks):
+ *   javac -d out ../Benchmark/Measurement.java Rational.java
+ *   java -cp out Rational [harmonicTerms] [seriesTerms]
+ */
+public final class Rational implements Comparable<Rational> {
+
+    public static final Rational ZERO = new Rational(0, 1);
+    public static final Rational ONE = new Rational(1, 1);
+
+    // The value is num / den, unless bigNum is not null: then bigNum / bigDen
+    private final long num;
+    private final long den;
+    private final BigInteger bigNum;
+    private final BigInteger bigDen;
+
+    private Rational(long num, long den) {
+        this.num = num;
+        this.den = den;
+        this.bigNum = null;
+        this.bigDen = null;
+    }
+
+    private Rational(BigInteger num, BigInteger den) {
+        this.num = 0;
+        this.den = 0;
+        this.bigNum = num;
+        this.bigDen = den;
+    }
+
+    public static Rational valueOf(long n) {
+        return new Rational(n, 1);
+    }
+
+    public static Rational of(long numerator, long denominator) {
+        if (denominator == 0) {
+            throw new ArithmeticException("Denominator is zero");
+        }
+        if (numerator == Long.MIN_VALUE || denominator == Long.MIN_VALUE) {
+            return of(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));
+        }
+        return normalized(numerator, denominator);
+    }
+
+    public static Rational of(BigInteger numerator, BigInteger denominator) {
+        if (denominator.signum() == 0) {
+            throw new ArithmeticException("Denominator is zero");
+        }
+        if (denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        BigInteger g = numerator.gcd(denominator);
+        if (!g.equals(BigInteger.ONE)) {
+            numerator = numerator.divide(g);
+            denominator = denominator.divide(g);
+        }
+        return reduced(numerator, denominator);
+    }
+
+    // n / d with d != 0 and neither of them Long.MIN_VALUE
+    private static Rational normalized(long n, long d) {
+        if (d < 0) {
+            n = -n;
+            d = -d;
+        }
+        long g = gcd(Math.abs(n), d);
+        return g == 1 ? new Rational(n, d) : new Rational(n / g, d / g);
+    }
+
+    // An already reduced BigInteger fraction, back in longs if it fits
+    private static Rational reduced(BigInteger n, BigInteger d) {
+        if (n.bitLength() < 64 && d.bitLength() < 64) {
+            return new Rational(n.longValue(), d.longValue());
+        }
+        return new Rational(n, d);
+    }
+
+    /**
+     * Binary (Stein's) GCD of two non-negative longs: shifts and subtractions, no division.
+     */
+    static long gcd(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0) {
+            return a;
+        }
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>>= Long.numberOfTrailingZeros(a);
+        while (b != 0) {
+            b >>>= Long.numberOfTrailingZeros(b);
+            if (a > b) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        }
+        return a << shift;
+    }
+
+    public boolean fitsInLongs() {
+        return bigNum == null;
+    }
+
+    public BigInteger numerator() {
+        return bigNum == null ? BigInteger.valueOf(num) : bigNum;
+    }
+
+    public BigInteger denominator() {
+        return bigNum == null ? BigInteger.valueOf(den) : bigDen;
+    }
+
+    public int signum() {
+        return bigNum == null ? Long.signum(num) : bigNum.signum();
+    }
+
+    public Rational add(Rational other) {
+        if (bigNum == null && other.bigNum == null) {
+            try {
+                return addLongs(num, den, other.num, other.den);
+            } catch (ArithmeticException overflow) {
+                // Fall through to BigInteger
+            }
+        }
+        if (other.bigNum == null) {
+            return addSmall(numerator(), denominator(), other.num, other.den);
+        }
+        if (bigNum == null) {
+            return addSmall(other.bigNum, other.bigDen, num, den);
+        }
+        return addBig(bigNum, bigDen, other.bigNum, other.bigDen);
+    }
+
+    public Rational subtract(Rational other) {
+        return add(other.negate());
+    }
+
+    public Rational multiply(Rational other) {
+        if (bigNum == null && other.bigNum == null) {
+            try {
+                long g1 = gcd(Math.abs(num), other.den);
+                long g2 = gcd(Math.abs(other.num), den);
+                return new Rational(Math.multiplyExact(num / g1, other.num / g2),
+                        Math.multiplyExact(den / g2, other.den / g1));
+            } catch (ArithmeticException overflow) {
+                // Fall through to BigInteger
+            }
+        }
+        BigInteger n1 = numerator(), d1 = denominator(), n2 = other.numerator(), d2 = other.denominator();
+        BigInteger g1 = n1.gcd(d2);
+        BigInteger g2 = n2.gcd(d1);
+        return reduced(n1.divide(g1).multiply(n2.divide(g2)), d1.divide(g2).multiply(d2.divide(g1)));
+    }
+
+    public Rational divide(Rational other) {
+        return multiply(other.reciprocal());
+    }
+
+    public Rational negate() {
+        if (bigNum == null && num != Long.MIN_VALUE) {
+            return new Rational(-num, den);
+        }
+        return reduced(numerator().negate(), denominator());
+    }
+
+    public Rational reciprocal() {
+        if (signum() == 0) {
+            throw new ArithmeticException("Reciprocal of zero");
+        }
+        if (bigNum == null && num != Long.MIN_VALUE) {
+            return num < 0 ? new Rational(-den, -num) : new Rational(den, num);
+        }
+        BigInteger n = numerator();
+        BigInteger d = denominator();
+        return n.signum() < 0 ? reduced(d.negate(), n.negate()) : reduced(d, n);
+    }
+
+    public double doubleValue() {
+        if (bigNum == null) {
+            return (double) num / den;
+        }
+        return new java.math.BigDecimal(bigNum).divide(new java.math.BigDecimal(bigDen), java.math.MathContext.DECIMAL64)
+                .doubleValue();
+    }
+
+    @Override
+    public int compareTo(Rational other) {
+        if (bigNum == null && other.bigNum == null) {
+            long high1 = Math.multiplyHigh(num, other.den);
+            long high2 = Math.multiplyHigh(other.num, den);
+            if (high1 != high2) {
+                return Long.compare(high1, high2);
+            }
+            return Long.compareUnsigned(num * other.den, other.num * den);
+        }
+        return numerator().multiply(other.denominator()).compareTo(other.numerator().multiply(denominator()));
+    }
+
+    // Normalized, so equal values have equal fields
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Rational)) {
+            return false;
+        }
+        Rational other = (Rational) o;
+        if (bigNum == null || other.bigNum == null) {
+            return bigNum == null && other.bigNum == null && num == other.num && den == other.den;
+        }
+        return bigNum.equals(other.bigNum) && bigDen.equals(other.bigDen);
+    }
+
+    @Override
+    public int hashCode() {
+        return bigNum == null ? Long.hashCode(num) * 31 + Long.hashCode(den) : bigNum.hashCode() * 31 + bigDen.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return bigNum == null ? num + "/" + den : bigNum + "/" + bigDen;
+    }
+
+    // a/b + c/d in longs; throws ArithmeticException on overflow
+    private static Rational addLongs(long a, long b, long c, long d) {
+        if (b == d) {
+            return of(Math.addExact(a, c), b);
+        }
+        long g = gcd(b, d);
+        if (g == 1) {
+            return new Rational(Math.addExact(Math.multiplyExact(a, d), Math.multiplyExact(c, b)),
+                    Math.multiplyExact(b, d));
+        }
+        long n = Math.addExact(Math.multiplyExact(a, d / g), Math.multiplyExact(c, b / g));
+        // Only factors of g can be common to n and the new denominator
+        long g2 = gcd(Math.abs(n), g);
+        return new Rational(n / g2, Math.multiplyExact(b / g, d / g2));
+    }
+
+    // n/d + c/e for a small term c/e: the gcds are taken with e, which is cheap
+    private static Rational addSmall(BigInteger n, BigInteger d, long c, long e) {
+        long g = gcd(d.mod(BigInteger.valueOf(e)).longValue(), e);
+        BigInteger e1 = BigInteger.valueOf(e / g);
+        BigInteger sum = n.multiply(e1).add(BigInteger.valueOf(c).multiply(d.divide(BigInteger.valueOf(g))));
+        long g2 = gcd(sum.mod(BigInteger.valueOf(g)).longValue(), g);
+        BigInteger den = d.multiply(BigInteger.valueOf(e / g2)).divide(BigInteger.valueOf(g));
+        return g2 == 1 ? reduced(sum, den) : reduced(sum.divide(BigInteger.valueOf(g2)), den);
+    }
+
+    private static Rational addBig(BigInteger a, BigInteger b, BigInteger c, BigInteger d) {
+        BigInteger g = b.gcd(d);
+        if (g.equals(BigInteger.ONE)) {
+            return reduced(a.multiply(d).add(c.multiply(b)), b.multiply(d));
+        }
+        BigInteger n = a.multiply(d.divide(g)).add(c.multiply(b.divide(g)));
+        BigInteger g2 = n.gcd(g);
+        return reduced(n.divide(g2), b.divide(g).multiply(d.divide(g2)));
+    }
+
+    /**
+     * A mutable running sum. While numerator and denominator fit in longs, add() updates two
+     * long fields. Past that they are kept as int[] magnitudes (little-endian words, as in
+     * BigAccumulator) and a term with a numerator and denominator below 2^31 is added in place:
+     * a few passes of word-by-word multiply, divide and remainder by the term's denominator, with
+     * the gcds taken against that small denominator only. Once the arrays have grown, adding such
+     * a term allocates nothing in either tier.
+     */
+    public static final class Accumulator {
+        private static final long MASK = 0xFFFFFFFFL;
+
+        // The sum is num / den while small, else sign * numMag / denMag
+        private boolean small = true;
+        private long num;
+        private long den = 1;
+
+        private int sign;
+        private int[] numMag = new int[4];
+        private int numLength;
+        private int[] denMag = new int[4];
+        private int denLength;
+        // denominator / g, and |c| * (denominator / g), for the term being added
+        private int[] spare = new int[4];
+        private int spareLength;
+        private int[] product = new int[4];
+        private int productLength;
+
+        public Accumulator add(long numerator, long denominator) {
+            if (denominator <= 0 || numerator == Long.MIN_VALUE) {
+                return add(Rational.of(numerator, denominator));
+            }
+            // The gcd shortcuts below need the term in lowest terms too
+            long g = gcd(Math.abs(numerator), denominator);
+            if (g != 1) {
+                numerator /= g;
+                denominator /= g;
+            }
+            if (small) {
+                if (addInPlace(numerator, denominator)) {
+                    return this;
+                }
+                spill();
+            }
+            if (denominator > Integer.MAX_VALUE || Math.abs(numerator) > Integer.MAX_VALUE) {
+                set(addSmall(toBigInteger(sign, numMag, numLength), toBigInteger(1, denMag, denLength), numerator,
+                        denominator));
+            } else {
+                addWords(numerator, denominator);
+            }
+            return this;
+        }
+
+        public Accumulator add(Rational term) {
+            if (term.bigNum == null && term.num != Long.MIN_VALUE) {
+                return add(term.num, term.den);
+            }
+            set(toRational().add(term));
+            return this;
+        }
+
+        public Rational toRational() {
+            if (small) {
+                return new Rational(num, den);
+            }
+            return reduced(toBigInteger(sign, numMag, numLength), toBigInteger(1, denMag, denLength));
+        }
+
+        public boolean fitsInLongs() {
+            return small;
+        }
+
+        // num/den += c/e in the two longs; false (and nothing changed) on overflow
+        private boolean addInPlace(long c, long e) {
+            long g = gcd(den, e);
+            long d1 = e / g;
+            long high = Math.multiplyHigh(num, d1);
+            long part1 = num * d1;
+            long high2 = Math.multiplyHigh(c, den / g);
+            long part2 = c * (den / g);
+            long n = part1 + part2;
+            if (high != (part1 >> 63) || high2 != (part2 >> 63) || ((part1 ^ n) & (part2 ^ n)) < 0) {
+                return false;
+            }
+            long g2 = gcd(Math.abs(n), g);
+            long newDen = den / g;
+            long denHigh = Math.multiplyHigh(newDen, e / g2);
+            long denProduct = newDen * (e / g2);
+            if (denHigh != 0 || denProduct < 0 || n == Long.MIN_VALUE) {
+                return false;
+            }
+            num = n / g2;
+            den = denProduct;
+            return true;
+        }
+
+        /*
+         * N/D += c/e for reduced c/e with |c|, e < 2^31, following Knuth: g = gcd(D, e) =
+         * gcd(D mod e, e), N' = N (e/g) + c (D/g), and only a factor of g can be common to N' and
+         * D (e/g), so g2 = gcd(N' mod g, g) finishes the reduction.
+         */
+        private void addWords(long c, long e) {
+            long g = gcd(remainder(denMag, denLength, e), e);
+            int[] reducedDen = denMag;
+            int reducedDenLength = denLength;
+            if (g != 1) {
+                spare = ensureCapacity(spare, denLength + 1);
+                spareLength = divide(denMag, denLength, g, spare);
+                reducedDen = spare;
+                reducedDenLength = spareLength;
+            }
+            product = ensureCapacity(product, reducedDenLength + 1);
+            productLength = multiply(reducedDen, reducedDenLength, Math.abs(c), product);
+
+            numMag = ensureCapacity(numMag, numLength + 1);
+            numLength = multiply(numMag, numLength, e / g, numMag);
+            addMagnitude(Long.signum(c), product, productLength);
+            if (sign == 0) {
+                small = true;
+                num = 0;
+                den = 1;
+                return;
+            }
+
+            long g2 = g == 1 ? 1 : gcd(remainder(numMag, numLength, g), g);
+            if (g2 != 1) {
+                numLength = divide(numMag, numLength, g2, numMag);
+            }
+            if (g != 1) {
+                int[] swap = denMag;
+                denMag = spare;
+                spare = swap;
+                denLength = spareLength;
+            }
+            denMag = ensureCapacity(denMag, denLength + 1);
+            denLength = multiply(denMag, denLength, e / g2, denMag);
+            demote();
+        }
+
+        // sign * numMag += otherSign * other
+        private void addMagnitude(int otherSign, int[] other, int otherLength) {
+            if (otherSign == 0 || otherLength == 0) {
+                return;
+            }
+            if (sign == otherSign) {
+                int longest = Math.max(numLength, otherLength);
+                numMag = ensureCapacity(numMag, longest + 1);
+                long carry = 0;
+                for (int i = 0; i < longest; i++) {
+                    long sum = word(numMag, numLength, i) + word(other, otherLength, i) + carry;
+                    numMag[i] = (int) sum;
+                    carry = sum >>> 32;
+                }
+                numMag[longest] = (int) carry;
+                numLength = carry != 0 ? longest + 1 : longest;
+                return;
+            }
+            int cmp = compare(numMag, numLength, other, otherLength);
+            if (cmp == 0) {
+                sign = 0;
+                numLength = 0;
+                return;
+            }
+            // larger - smaller into numMag
+            int[] larger = cmp > 0 ? numMag : other;
+            int largerLength = cmp > 0 ? numLength : otherLength;
+            int[] smaller = cmp > 0 ? other : numMag;
+            int smallerLength = cmp > 0 ? otherLength : numLength;
+            numMag = ensureCapacity(numMag, largerLength);
+            long borrow = 0;
+            for (int i = 0; i < largerLength; i++) {
+                long difference = (larger[i] & MASK) - word(smaller, smallerLength, i) - borrow;
+                numMag[i] = (int) difference;
+                borrow = difference < 0 ? 1 : 0;
+            }
+            numLength = largerLength;
+            while (numLength > 0 && numMag[numLength - 1] == 0) {
+                numLength--;
+            }
+            if (cmp < 0) {
+                sign = otherSign;
+            }
+        }
+
+        // Move the long fraction into the word arrays
+        private void spill() {
+            sign = Long.signum(num);
+            long magnitude = num < 0 ? -num : num; // Long.MIN_VALUE stays 2^63 as unsigned
+            numMag[0] = (int) magnitude;
+            numMag[1] = (int) (magnitude >>> 32);
+            numLength = numMag[1] != 0 ? 2 : (numMag[0] != 0 ? 1 : 0);
+            denMag[0] = (int) den;
+            denMag[1] = (int) (den >>> 32);
+            denLength = denMag[1] != 0 ? 2 : 1;
+            small = false;
+        }
+
+        // Back to the long fields when both fit again
+        private void demote() {
+            if (numLength > 2 || denLength > 2) {
+                return;
+            }
+            long n = word(numMag, numLength, 0) | (word(numMag, numLength, 1) << 32);
+            long d = word(denMag, denLength, 0) | (word(denMag, denLength, 1) << 32);
+            if (n >= 0 && d > 0) {
+                num = sign < 0 ? -n : n;
+                den = d;
+                small = true;
+            }
+        }
+
+        private void set(Rational value) {
+            if (value.bigNum == null) {
+                num = value.num;
+                den = value.den;
+                small = true;
+                return;
+            }
+            sign = value.bigNum.signum();
+            numLength = (value.bigNum.abs().bitLength() + 31) / 32;
+            numMag = toWords(value.bigNum.abs(), ensureCapacity(numMag, numLength), numLength);
+            denLength = (value.bigDen.bitLength() + 31) / 32;
+            denMag = toWords(value.bigDen, ensureCapacity(denMag, denLength), denLength);
+            small = false;
+        }
+
+        private static long word(int[] words, int length, int i) {
+            return i < length ? words[i] & MASK : 0;
+        }
+
+        private static int[] ensureCapacity(int[] words, int length) {
+            return words.length < length ? Arrays.copyOf(words, Math.max(length, words.length * 2)) : words;
+        }
+
+        // words mod m, for 0 < m < 2^31: the running remainder shifted left stays below 2^63
+        private static long remainder(int[] words, int length, long m) {
+            long r = 0;
+            for (int i = length - 1; i >= 0; i--) {
+                r = ((r << 32) | (words[i] & MASK)) % m;
+            }
+            return r;
+        }
+
+        // quotient = words / m, for 0 < m < 2^31; quotient may be words itself
+        private static int divide(int[] words, int length, long m, int[] quotient) {
+            long r = 0;
+            for (int i = length - 1; i >= 0; i--) {
+                long current = (r << 32) | (words[i] & MASK);
+                quotient[i] = (int) (current / m);
+                r = current % m;
+            }
+            while (length > 0 && quotient[length - 1] == 0) {
+                length--;
+            }
+            return length;
+        }
+
+        // out = words * m, for 0 <= m < 2^31; out has room for length + 1 words and may be words
+        private static int multiply(int[] words, int length, long m, int[] out) {
+            long carry = 0;
+            for (int i = 0; i < length; i++) {
+                long t = (words[i] & MASK) * m + carry;
+                out[i] = (int) t;
+                carry = t >>> 32;
+            }
+            if (carry != 0) {
+                out[length++] = (int) carry;
+            }
+            while (length > 0 && out[length - 1] == 0) {
+                length--;
+            }
+            return length;
+        }
+
+        private static int compare(int[] a, int aLength, int[] b, int bLength) {
+            if (aLength != bLength) {
+                return aLength > bLength ? 1 : -1;
+            }
+            for (int i = aLength - 1; i >= 0; i--) {
+                if (a[i] != b[i]) {
+                    return Integer.compareUnsigned(a[i], b[i]);
+                }
+            }
+            return 0;
+        }
+
+        private static int[] toWords(BigInteger magnitude, int[] words, int length) {
+            byte[] bytes = magnitude.toByteArray();
+            for (int i = 0; i < length; i++) {
+                int word = 0;
+                for (int j = 3; j >= 0; j--) {
+                    int at = bytes.length - 1 - (4 * i + j);
+                    word = (word << 8) | (at >= 0 ? bytes[at] & 0xFF : 0);
+                }
+                words[i] = word;
+            }
+            return words;
+        }
+
+        private static BigInteger toBigInteger(int sign, int[] words, int length) {
+            byte[] bytes = new byte[length * 4];
+            for (int i = 0; i < length; i++) {
+                int word = words[i];
+                int at = bytes.length - 4 * i;
+                bytes[at - 1] = (byte) word;
+                bytes[at - 2] = (byte) (word >>> 8);
+                bytes[at - 3] = (byte) (word >>> 16);
+                bytes[at - 4] = (byte) (word >>> 24);
+            }
+            return new BigInteger(length == 0 ? 0 : sign, bytes);
+        }
+    }
+
+    public static void main(String[] args) {
+        int harmonicTerms = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seriesTerms = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        Random random = new Random(9);
+        int checks = check(random, 100_000) + checkSums(random, 1_000);
+        System.out.println("Property checks against BigInteger fractions: " + checks + " passed");
+
+        // The first rounds are warm-up, the last one is reported
+        for (int round = 0; round < 3; round++) {
+            boolean report = round == 2;
+            telescoping(seriesTerms, report);
+        }
+        harmonic(harmonicTerms);
+    }
+
+    /**
+     * 1/(1*2) + 1/(2*3) + ... = n/(n+1): every partial sum fits in longs once reduced, so this
+     * compares allocation per add, and shows what Fraction does without reducing.
+     */
+    private static void telescoping(int n, boolean report) {
+        Measurement fraction = Measurement.start();
+        long fractionNum = 0;
+        long fractionDen = 1;
+        // Fraction's arithmetic on longs: no reduction
+        for (long k = 1; k <= n; k++) {
+            long d = k * (k + 1);
+            fractionNum = fractionNum * d + fractionDen;
+            fractionDen = fractionDen * d;
+        }
+        fraction.stop();
+
+        Measurement immutable = Measurement.start();
+        Rational sum = ZERO;
+        for (long k = 1; k <= n; k++) {
+            sum = sum.add(Rational.of(1, k * (k + 1)));
+        }
+        immutable.stop();
+
+        Measurement accumulator = Measurement.start();
+        Accumulator acc = new Accumulator();
+        for (long k = 1; k <= n; k++) {
+            acc.add(1, k * (k + 1));
+        }
+        accumulator.stop();
+
+        Rational expected = Rational.of(n, n + 1L);
+        if (!sum.equals(expected) || !acc.toRational().equals(expected)) {
+            throw new AssertionError("Telescoping sum is " + sum + " / " + acc.toRational() + ", not " + expected);
+        }
+        if (report) {
+            System.out.printf("Sum of 1/(k(k+1)) for k = 1..%,d = %s%n", n, expected);
+            System.out.printf("  unreduced longs (Fraction) : %s  -> %d/%d (overflowed)%n", fraction,
+                    fractionNum, fractionDen);
+            System.out.printf("  Rational.add               : %s%n", immutable);
+            System.out.printf("  Rational.Accumulator       : %s%n", accumulator);
+        }
+    }
+
+    /**
+     * H(n) = 1 + 1/2 + ... + 1/n exactly. Its denominator is about lcm(1..n), 1.44 n bits, so
+     * this is BigInteger work whatever the engine; what matters is that no step takes a gcd of
+     * two big numbers. The pair-of-BigIntegers baseline does, at every step.
+     */
+    private static void harmonic(int n) {
+        // The baseline is quadratic in n, so all three run on the first terms only
+        int shortTerms = Math.min(n, 5_000);
+        Measurement baseline = Measurement.start();
+        BigInteger bn = BigInteger.ZERO;
+        BigInteger bd = BigInteger.ONE;
+        for (int k = 1; k <= shortTerms; k++) {
+            BigInteger kk = BigInteger.valueOf(k);
+            bn = bn.multiply(kk).add(bd);
+            bd = bd.multiply(kk);
+            BigInteger g = bn.gcd(bd);
+            bn = bn.divide(g);
+            bd = bd.divide(g);
+        }
+        baseline.stop();
+
+        Measurement immutable = Measurement.start();
+        Rational sum = ZERO;
+        for (int k = 1; k <= shortTerms; k++) {
+            sum = sum.add(Rational.of(1, k));
+        }
+        immutable.stop();
+
+        Measurement shortAccumulator = Measurement.start();
+        Accumulator acc = new Accumulator();
+        for (int k = 1; k <= shortTerms; k++) {
+            acc.add(1, k);
+        }
+        shortAccumulator.stop();
+        if (!sum.equals(Rational.of(bn, bd)) || !acc.toRational().equals(sum)) {
+            throw new AssertionError("H(" + shortTerms + ") differs from the BigInteger baseline");
+        }
+
+        Measurement accumulator = Measurement.start();
+        for (int k = shortTerms + 1; k <= n; k++) {
+            acc.add(1, k);
+        }
+        accumulator.stop();
+
+        Rational h = acc.toRational();
+        System.out.printf("Harmonic number H(%,d) = %s, %,d terms%n", shortTerms, sum.doubleValue(), shortTerms);
+        System.out.printf("  BigInteger pair, gcd every step : %s%n", baseline);
+        System.out.printf("  Rational.add                    : %s%n", immutable);
+        System.out.printf("  Rational.Accumulator            : %s%n", shortAccumulator);
+        System.out.printf("Harmonic number H(%,d) = %s, denominator %,d bits%n", n, h.doubleValue(),
+                h.denominator().bitLength());
+        System.out.printf("  Rational.Accumulator, terms %,d..%,d : %s%n", shortTerms + 1, n, accumulator);
+    }
+
+    // Running sums of small signed terms, as the accumulator's word arrays see them
+    private static int checkSums(Random random, int sums) {
+        int checks = 0;
+        for (int s = 0; s < sums; s++) {
+            Accumulator acc = new Accumulator();
+            BigInteger n = BigInteger.ZERO;
+            BigInteger d = BigInteger.ONE;
+            int terms = 1 + random.nextInt(300);
+            for (int t = 0; t < terms; t++) {
+                long c = random.nextInt(2001) - 1000;
+                long e = 1 + random.nextInt(random.nextBoolean() ? 50 : Integer.MAX_VALUE);
+                if (random.nextInt(50) == 0) {
+                    // Undo everything so far: back to zero, and to the long fields
+                    Rational minus = Rational.of(n.negate(), d);
+                    acc.add(minus);
+                    n = BigInteger.ZERO;
+                    d = BigInteger.ONE;
+                } else {
+                    acc.add(c, e);
+                    n = n.multiply(BigInteger.valueOf(e)).add(BigInteger.valueOf(c).multiply(d));
+                    d = d.multiply(BigInteger.valueOf(e));
+                }
+                checkEqual(acc.toRational(), n, d);
+                checks++;
+            }
+        }
+        return checks;
+    }
+
+    // Random operations on Rationals against the same operations on BigInteger pairs
+    private static int check(Random random, int steps) {
+        long[] edges = { 0, 1, -1, 2, Long.MAX_VALUE, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1, 1L << 62,
+                3037000499L, 3037000500L, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        int checks = 0;
+        for (int step = 0; step < steps; step++) {
+            long a = pick(random, edges), c = pick(random, edges);
+            long b = nonZero(pick(random, edges)), d = nonZero(pick(random, edges));
+            Rational x = Rational.of(a, b);
+            Rational y = Rational.of(c, d);
+            if (random.nextInt(4) == 0) {
+                // Operands in the BigInteger tier as well
+                x = x.multiply(Rational.of(Long.MAX_VALUE, 3)).add(y);
+            }
+            BigInteger[] bx = { x.numerator(), x.denominator() };
+            BigInteger[] by = { y.numerator(), y.denominator() };
+
+            checkEqual(x.add(y), bx[0].multiply(by[1]).add(by[0].multiply(bx[1])), bx[1].multiply(by[1]));
+            checkEqual(x.subtract(y), bx[0].multiply(by[1]).subtract(by[0].multiply(bx[1])), bx[1].multiply(by[1]));
+            checkEqual(x.multiply(y), bx[0].multiply(by[0]), bx[1].multiply(by[1]));
+            if (y.signum() != 0) {
+                checkEqual(x.divide(y), bx[0].multiply(by[1]), bx[1].multiply(by[0]));
+            }
+            Accumulator acc = new Accumulator().add(x);
+            acc.add(c, Math.abs(d) == Long.MIN_VALUE ? 1 : Math.abs(d));
+            checkEqual(acc.toRational(), bx[0].multiply(BigInteger.valueOf(Math.abs(d))).add(BigInteger.valueOf(c).multiply(bx[1])),
+                    bx[1].multiply(BigInteger.valueOf(Math.abs(d))));
+            if (Integer.signum(x.compareTo(y)) != Integer.signum(bx[0].multiply(by[1]).compareTo(by[0].multiply(bx[1])))) {
+                throw new AssertionError("compareTo wrong for " + x + " and " + y);
+            }
+            checks += 6;
+        }
+        return checks;
+    }
+
+    private static long pick(Random random, long[] edges) {
+        return random.nextInt(3) == 0 ? edges[random.nextInt(edges.length)] : random.nextLong() >> random.nextInt(64);
+    }
+
+    private static long nonZero(long value) {
+        return value == 0 ? 7 : value;
+    }
+
+    private static void checkEqual(Rational actual, BigInteger n, BigInteger d) {
+        Rational expected = Rational.of(n, d);
+        if (!actual.equals(expected) || actual.fitsInLongs() != (expected.numerator().bitLength() < 64
+                && expected.denominator().bitLength() < 64)) {
+            throw new AssertionError("Expected " + expected + ", got " + actual);
+        }
+    }
+}
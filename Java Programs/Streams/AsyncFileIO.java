@@ -0,0 +1,471 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * File reads and writes that do not block the caller, over AsynchronousFileChannel.
+ *
+ * The other examples in Streams (InputToFile, TryWithResource(s), Stream003_ProcessLines) block
+ * the calling thread for every read and write, so a single thread reads many files one after
+ * the other. Here every operation returns a CompletableFuture straight away and runs at an
+ * explicit position, so many files or ranges of one file can be in flight together.
+ *
+ * At most maxOutstanding operations run at once; the others wait in a queue and are started as
+ * running ones complete, without blocking the thread that submitted them; a result is completed
+ * before its permit goes to the next operation, which is started on the pool. The path-based
+ * operations (readRange, readAll, writeAll) open the file and allocate their buffer only once
+ * they start, and close it before the next one starts, so the cap also bounds open files and
+ * buffers. The channels run their I/O on this object's thread pool (on Linux,
+ * AsynchronousFileChannel does the blocking reads on pool threads), which is sized to
+ * maxOutstanding.
+ *
+ * Usage: java AsyncFileIO [files] [fileSizeKB] [maxOutstanding]
+ *        java AsyncFileIO dir <directory> [maxOutstanding]
+ */
+public class AsyncFileIO implements AutoCloseable {
+
+    private static final Set<OpenOption> READ = Set.of(StandardOpenOption.READ);
+    private static final Set<OpenOption> WRITE = Set.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+
+    private final int maxOutstanding;
+    private final ExecutorService pool;
+    private final Queue<Operation> waiting = new ArrayDeque<>();
+    private int running;
+
+    public AsyncFileIO(int maxOutstanding) {
+        if (maxOutstanding < 1) {
+            throw new IllegalArgumentException("maxOutstanding must be at least 1");
+        }
+        this.maxOutstanding = maxOutstanding;
+        this.pool = Executors.newFixedThreadPool(maxOutstanding, runnable -> {
+            Thread thread = new Thread(runnable, "async-file-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public AsynchronousFileChannel openForRead(Path path) throws IOException {
+        return AsynchronousFileChannel.open(path, READ, pool);
+    }
+
+    public AsynchronousFileChannel openForWrite(Path path) throws IOException {
+        return AsynchronousFileChannel.open(path, WRITE, pool);
+    }
+
+    /**
+     * Reads from position until the buffer is full or the end of the file; the future holds the
+     * number of bytes read. A short read is continued within the same permit.
+     */
+    public CompletableFuture<Integer> read(AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        submit(result, () -> readFully(channel, buffer, position, completing(result)));
+        return result;
+    }
+
+    /**
+     * Writes all of the buffer at position; the future holds the number of bytes written.
+     */
+    public CompletableFuture<Integer> write(AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        submit(result, () -> writeFully(channel, buffer, position, completing(result)));
+        return result;
+    }
+
+    /**
+     * Reads length bytes (fewer at the end of the file) starting at position. The file is opened
+     * and the buffer allocated only once the operation holds a permit.
+     */
+    public CompletableFuture<ByteBuffer> readRange(Path path, long position, int length) {
+        CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        submit(result, () -> open(path, READ, result, channel -> {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            readFully(channel, buffer, position, closing(channel, result, read -> buffer.flip()));
+        }));
+        return result;
+    }
+
+    /**
+     * Reads a whole file (up to 2 GB). The file is opened and the array allocated only once the
+     * operation holds a permit.
+     */
+    public CompletableFuture<byte[]> readAll(Path path) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        submit(result, () -> open(path, READ, result, channel -> {
+            long size;
+            try {
+                size = channel.size();
+            } catch (IOException e) {
+                closeQuietly(channel);
+                failedWith(result, e);
+                return;
+            }
+            if (size > Integer.MAX_VALUE - 8) {
+                closeQuietly(channel);
+                failedWith(result, new IOException(path + " is too large to read into an array"));
+                return;
+            }
+            byte[] data = new byte[(int) size];
+            readFully(channel, ByteBuffer.wrap(data), 0, closing(channel, result, read ->
+                    read == data.length ? data : Arrays.copyOf(data, read)));
+        }));
+        return result;
+    }
+
+    /**
+     * Replaces the contents of a file with data. The file is opened only once the operation
+     * holds a permit.
+     */
+    public CompletableFuture<Integer> writeAll(Path path, byte[] data) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        submit(result, () -> open(path, WRITE, result, channel ->
+                writeFully(channel, ByteBuffer.wrap(data), 0, closing(channel, result, written -> written))));
+        return result;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    // An operation that holds a permit while it runs
+    private final class Operation implements Runnable {
+        final CompletableFuture<?> result;
+        final Runnable start;
+
+        Operation(CompletableFuture<?> result, Runnable start) {
+            this.result = result;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.run();
+            } catch (RuntimeException e) {
+                // A closed channel and the like: the operation never started
+                failedWith(result, e);
+            }
+        }
+    }
+
+    // Start now if a permit is free, else when a running operation completes
+    private void submit(CompletableFuture<?> result, Runnable start) {
+        Operation operation = new Operation(result, start);
+        synchronized (this) {
+            if (running == maxOutstanding) {
+                waiting.add(operation);
+                return;
+            }
+            running++;
+        }
+        operation.run();
+    }
+
+    // Hand the permit of a completed operation to the next waiting one. The next one starts on
+    // the pool, not inline: one that fails at once releases again, and a long queue of those
+    // would otherwise recurse once per operation.
+    private void release() {
+        while (true) {
+            Operation next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            try {
+                pool.execute(next);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Closed: this one never starts and the permit goes on to the next
+                next.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    // The result first, so the caller does not wait for the next operation to be started
+    private <T> void done(CompletableFuture<T> result, T value) {
+        result.complete(value);
+        release();
+    }
+
+    private void failedWith(CompletableFuture<?> result, Throwable e) {
+        result.completeExceptionally(e);
+        release();
+    }
+
+    // Within a permit: opens the file and hands it to use, which must close it when done. On
+    // failure to open the permit is released; if use throws, the channel is closed.
+    private void open(Path path, Set<OpenOption> options, CompletableFuture<?> result,
+            Consumer<AsynchronousFileChannel> use) {
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(path, options, pool);
+        } catch (IOException e) {
+            failedWith(result, e);
+            return;
+        }
+        try {
+            use.accept(channel);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    // Continues short reads until the buffer is full or the end of the file; reports the total
+    private static void readFully(AsynchronousFileChannel channel, ByteBuffer buffer, long position,
+            CompletionHandler<Integer, Void> handler) {
+        int start = buffer.position();
+        channel.read(buffer, position, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer read, Void ignored) {
+                if (read >= 0 && buffer.hasRemaining()) {
+                    channel.read(buffer, position + buffer.position() - start, null, this);
+                } else {
+                    handler.completed(buffer.position() - start, null);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Void ignored) {
+                handler.failed(e, null);
+            }
+        });
+    }
+
+    private static void writeFully(AsynchronousFileChannel channel, ByteBuffer buffer, long position,
+            CompletionHandler<Integer, Void> handler) {
+        int start = buffer.position();
+        channel.write(buffer, position, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer written, Void ignored) {
+                if (buffer.hasRemaining()) {
+                    channel.write(buffer, position + buffer.position() - start, null, this);
+                } else {
+                    handler.completed(buffer.position() - start, null);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Void ignored) {
+                handler.failed(e, null);
+            }
+        });
+    }
+
+    // Completes result and releases the permit
+    private CompletionHandler<Integer, Void> completing(CompletableFuture<Integer> result) {
+        return closing(null, result, bytes -> bytes);
+    }
+
+    // Closes the channel (if any) before the permit is released, so open files stay within the cap
+    private <T> CompletionHandler<Integer, Void> closing(AsynchronousFileChannel channel, CompletableFuture<T> result,
+            Function<Integer, T> value) {
+        return new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer bytes, Void ignored) {
+                if (channel != null) {
+                    closeQuietly(channel);
+                }
+                T completed;
+                try {
+                    completed = value.apply(bytes);
+                } catch (RuntimeException e) {
+                    failedWith(result, e);
+                    return;
+                }
+                done(result, completed);
+            }
+
+            @Override
+            public void failed(Throwable e, Void ignored) {
+                if (channel != null) {
+                    closeQuietly(channel);
+                }
+                failedWith(result, e);
+            }
+        };
+    }
+
+    private static void closeQuietly(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing was pending on the channel any more
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Path> files;
+        int maxOutstanding;
+        Path generated = null;
+        if (args.length > 1 && args[0].equals("dir")) {
+            try (Stream<Path> listing = Files.list(Paths.get(args[1]))) {
+                files = listing.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            maxOutstanding = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        } else {
+            int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+            int sizeKb = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+            maxOutstanding = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+            generated = Files.createTempDirectory("async-io");
+            files = generate(generated, count, sizeKb, maxOutstanding);
+        }
+        checkFailures(files.get(0));
+
+        try {
+            long totalBytes = 0;
+            for (Path file : files) {
+                totalBytes += Files.size(file);
+            }
+            double megabytes = totalBytes / (1024.0 * 1024.0);
+            System.out.printf("Reading %d files, %.1f MB, up to %d reads in flight%n",
+                    files.size(), megabytes, maxOutstanding);
+
+            // The first rounds are warm-up, the last one is reported
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                long blockingSum = readBlocking(files);
+                double blocking = (System.nanoTime() - start) / 1e9;
+
+                start = System.nanoTime();
+                long asyncSum = readAsync(files, maxOutstanding);
+                double async = (System.nanoTime() - start) / 1e9;
+
+                if (blockingSum != asyncSum) {
+                    throw new IllegalStateException("Blocking and async reads returned different bytes");
+                }
+                if (round == 2) {
+                    System.out.printf("  blocking, one file at a time : %7.1f ms %8.1f MB/s%n",
+                            blocking * 1000, megabytes / blocking);
+                    System.out.printf("  AsynchronousFileChannel      : %7.1f ms %8.1f MB/s%n",
+                            async * 1000, megabytes / async);
+                }
+            }
+            // Reads from the page cache are plain memory copies, bound by the CPUs; keeping many
+            // reads in flight pays off when each one waits on a device or the network
+            System.out.printf("(%d CPUs; files still in the page cache are CPU-bound, the overlap shows%n"
+                    + " on a cold cache, network file systems and deep SSD queues)%n",
+                    Runtime.getRuntime().availableProcessors());
+        } finally {
+            if (generated != null) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+                Files.delete(generated);
+            }
+        }
+    }
+
+    private static long readBlocking(List<Path> files) throws IOException {
+        long sum = 0;
+        for (Path file : files) {
+            sum += checksum(Files.readAllBytes(file));
+        }
+        return sum;
+    }
+
+    private static long readAsync(List<Path> files, int maxOutstanding) {
+        try (AsyncFileIO io = new AsyncFileIO(maxOutstanding)) {
+            List<CompletableFuture<Long>> reads = new ArrayList<>(files.size());
+            for (Path file : files) {
+                reads.add(io.readAll(file).thenApply(AsyncFileIO::checksum));
+            }
+            long sum = 0;
+            for (CompletableFuture<Long> read : reads) {
+                sum += read.join();
+            }
+            return sum;
+        }
+    }
+
+    /*
+     * Operations that fail at once, queued behind a single permit, must each fail on their own
+     * future without stacking up calls, and the permit must come back for a later read.
+     */
+    private static void checkFailures(Path existing) throws IOException {
+        Path missing = existing.resolveSibling("missing-" + System.nanoTime());
+        try (AsyncFileIO io = new AsyncFileIO(1)) {
+            // Holds the permit until it is completed below, so the failing ones queue up
+            CompletableFuture<Void> gate = new CompletableFuture<>();
+            io.submit(gate, () -> { });
+            List<CompletableFuture<byte[]>> reads = new ArrayList<>();
+            for (int i = 0; i < 20_000; i++) {
+                reads.add(io.readAll(missing));
+            }
+            CompletableFuture<ByteBuffer> negative = io.readRange(existing, 0, -1);
+            io.done(gate, null);
+            for (CompletableFuture<byte[]> read : reads) {
+                try {
+                    read.join();
+                    throw new AssertionError("Read a missing file");
+                } catch (CompletionException e) {
+                    if (!(e.getCause() instanceof IOException)) {
+                        throw new AssertionError("Unexpected failure", e.getCause());
+                    }
+                }
+            }
+            try {
+                negative.join();
+                throw new AssertionError("Read a range of negative length");
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof IllegalArgumentException)) {
+                    throw new AssertionError("Unexpected failure", e.getCause());
+                }
+            }
+            if (io.readAll(existing).join().length != Files.size(existing)) {
+                throw new AssertionError("Permit not returned after failures");
+            }
+        }
+    }
+
+    private static long checksum(byte[] data) {
+        long sum = 0;
+        for (byte b : data) {
+            sum = 31 * sum + b;
+        }
+        return sum;
+    }
+
+    // The test files are written with the async layer as well
+    private static List<Path> generate(Path directory, int count, int sizeKb, int maxOutstanding) {
+        byte[] data = new byte[sizeKb * 1024];
+        new Random(3).nextBytes(data);
+        List<Path> files = new ArrayList<>(count);
+        try (AsyncFileIO io = new AsyncFileIO(maxOutstanding)) {
+            List<CompletableFuture<Integer>> writes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Path file = directory.resolve("file-" + i + ".bin");
+                files.add(file);
+                writes.add(io.writeAll(file, data));
+            }
+            writes.forEach(CompletableFuture::join);
+        }
+        return files;
+    }
+}
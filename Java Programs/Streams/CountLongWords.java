@@ -1,46 +1,240 @@
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Stream01
+ *
+ * Counts the words longer than five characters. The file is never loaded as a whole:
+ * it is read in fixed-size chunks through a FileChannel, decoded into a reusable
+ * CharBuffer and the letters are counted straight off that buffer, so memory use stays
+ * the same whatever the size of the input.
+ *
+ * Usage: java CountLongWords [file] [loop|stream|parallel|all] [minLength]
  */
 public class CountLongWords {
-    
-    // Declare words as a static variable so it can be accessed in main
-    private static List<String> words;
 
-    static {
-        String content;
+    // A word is a run of letters; non-letters are delimiters (same as split("\\PL+"))
+    private static final int DEFAULT_MIN_LENGTH = 6;
+
+    // Bytes read from the channel per call
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // Smallest range handed to a single task by the stream / parallel modes
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    enum Mode { LOOP, STREAM, PARALLEL }
+
+    public static void main(String[] args) {
+        Path path = Paths.get(args.length > 0 ? args[0] : "alice.txt");
+        String mode = args.length > 1 ? args[1] : "all";
+        int minLength = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MIN_LENGTH;
+
+        List<Mode> modes = new ArrayList<>();
+        if (mode.equalsIgnoreCase("all")) {
+            modes.addAll(List.of(Mode.values()));
+        } else {
+            modes.add(Mode.valueOf(mode.toUpperCase(Locale.ROOT)));
+        }
+
         try {
-            // Read the file into a string
-            content = new String(Files.readAllBytes(Paths.get("alice.txt")), StandardCharsets.UTF_8);
-            // Split the content into words; non-letters are delimiters.
-            words = List.of(content.split("\\PL+"));
-        } catch (IOException e) {
+            for (Mode m : modes) {
+                long start = System.nanoTime();
+                long count = countLongWords(path, m, minLength);
+                long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                System.out.println("Total word count (" + m.name().toLowerCase(Locale.ROOT) + ") : " + count
+                        + "  [" + elapsedMs + " ms]");
+            }
+        } catch (IOException | UncheckedIOException e) {
             e.printStackTrace();
-            // If reading the file fails, initialize words to an empty list
-            words = List.of();
         }
     }
 
-    public static void main(String[] args) {
-        long count = 0;
-        // Count the number of words
-        for (String w : words) {
-            if(w.length()>5)count++;
+    /**
+     * Counts the words of at least {@code minLength} chars in the file using the given mode.
+     * LOOP scans the whole file on the calling thread, STREAM and PARALLEL split the file
+     * into ranges that end on a word boundary and sum the ranges with stream() and
+     * parallelStream() respectively.
+     */
+    static long countLongWords(Path path, Mode mode, int minLength) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            switch (mode) {
+                case LOOP:
+                    return countRange(channel, 0, size, minLength);
+                case STREAM:
+                    return split(channel, size).stream()
+                            .mapToLong(range -> countRangeUnchecked(channel, range, minLength))
+                            .sum();
+                case PARALLEL:
+                    return split(channel, size).parallelStream()
+                            .mapToLong(range -> countRangeUnchecked(channel, range, minLength))
+                            .sum();
+                default:
+                    throw new IllegalArgumentException("Unknown mode: " + mode);
+            }
         }
-        
-        // Print the total word count
-        System.out.println("Total word count : " + count);
+    }
 
-        count = words.stream().filter(w -> w.length()>5).count();
-        System.out.println("Total word count : " +count);
+    private static long countRangeUnchecked(FileChannel channel, long[] range, int minLength) {
+        try {
+            return countRange(channel, range[0], range[1], minLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        // using parallelStream() to filtering and counting in parallel
-        count = words.parallelStream().filter(w -> w.length()>5).count();
-        System.out.println("Total word count : " + count);
+    /**
+     * Counts the long words in the byte range [start, end). Uses positional reads, so
+     * several ranges of the same channel can be counted at the same time.
+     */
+    static long countRange(FileChannel channel, long start, long end, int minLength) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        // UTF-8 never yields more chars than bytes; +1 for a high surrogate kept from the last chunk
+        CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE + 1);
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        LongWordScanner scanner = new LongWordScanner(minLength);
+
+        long position = start;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            bytes.limit((int) Math.min(bytes.capacity(), bytes.position() + (end - position)));
+            int read = bytes.hasRemaining() ? channel.read(bytes, position) : -1;
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                position += read;
+            }
+            bytes.flip();
+
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, endOfInput);
+                if (endOfInput && result.isUnderflow()) {
+                    decoder.flush(chars);
+                }
+                chars.flip();
+                scanner.scan(chars, endOfInput);
+                chars.compact();
+            } while (result.isOverflow());
+            bytes.compact();
+        }
+        return scanner.finish();
+    }
+
+    /**
+     * Splits [0, size) into ranges of roughly equal length. Every cut is placed just after an
+     * ASCII non-letter byte: such a byte is never part of a multi-byte UTF-8 sequence and is
+     * always a delimiter, so no word is cut in two.
+     */
+    static List<long[]> split(FileChannel channel, long size) throws IOException {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long target = Math.max(MIN_SEGMENT_SIZE, size / (parallelism * 4L));
+
+        List<long[]> ranges = new ArrayList<>();
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + target);
+            if (end < size) {
+                end = nextBoundary(channel, end, size, window);
+            }
+            ranges.add(new long[] { start, end });
+            start = end;
+        }
+        return ranges;
+    }
+
+    private static long nextBoundary(FileChannel channel, long from, long size, ByteBuffer window) throws IOException {
+        long position = from;
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = window.get(i);
+                if (b >= 0 && !Character.isLetter(b)) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Tokenizes letters off a CharBuffer without creating Strings. The length of the current
+     * word is carried across calls, so a word split between two chunks is counted once.
+     */
+    static final class LongWordScanner {
+        private final int minLength;
+        private int wordLength;
+        private long count;
+
+        LongWordScanner(int minLength) {
+            this.minLength = minLength;
+        }
+
+        void scan(CharBuffer chars, boolean endOfInput) {
+            char[] a = chars.array();
+            int offset = chars.arrayOffset();
+            int i = offset + chars.position();
+            int limit = offset + chars.limit();
+
+            while (i < limit) {
+                char c = a[i];
+                int codePoint = c;
+                int width = 1;
+                if (Character.isHighSurrogate(c)) {
+                    if (i + 1 < limit) {
+                        if (Character.isLowSurrogate(a[i + 1])) {
+                            codePoint = Character.toCodePoint(c, a[i + 1]);
+                            width = 2;
+                        }
+                    } else if (!endOfInput) {
+                        // Keep the high surrogate for the next chunk
+                        break;
+                    }
+                }
+
+                if (Character.isLetter(codePoint)) {
+                    // length() of the word, i.e. UTF-16 chars
+                    wordLength += width;
+                } else {
+                    endWord();
+                }
+                i += width;
+            }
+            chars.position(i - offset);
+        }
+
+        long finish() {
+            endWord();
+            return count;
+        }
+
+        private void endWord() {
+            if (wordLength >= minLength) {
+                count++;
+            }
+            wordLength = 0;
+        }
     }
 }
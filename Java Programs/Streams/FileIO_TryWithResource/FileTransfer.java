@@ -0,0 +1,233 @@
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * File copy without holding the file on the heap, using try-with-resources for the channels.
+ *
+ * TryWithResources reads a file back with input.available() into one byte[] (STREAM below). That
+ * keeps the whole file on the heap, and available() is only an estimate of what can be read
+ * without blocking, not the file size. The other strategies work on FileChannels:
+ *  - TRANSFER: FileChannel.transferTo, the OS copies the bytes (sendfile / copy_file_range)
+ *    without bringing them into the JVM at all
+ *  - TRANSFER_FROM: the same from the target's side, FileChannel.transferFrom
+ *  - MAPPED: the source is memory-mapped in chunks and each mapping is written to the target
+ *  - DIRECT_BUFFER: chunked read/write through one reused direct ByteBuffer of tunable size
+ *  - AUTO: DIRECT_BUFFER for small files, where setting up a transfer or mapping costs more
+ *    than the copy, TRANSFER otherwise. MAPPED is never chosen: it is not faster than TRANSFER
+ *    at any size, and transferTo already copies through mappings when the OS cannot copy
+ *    between the files itself
+ *
+ * Usage: java FileTransfer copy <source> <target> [strategy] [bufferSize] [verify]
+ *        java FileTransfer bench [sizeMB] [bufferSize]
+ */
+public class FileTransfer {
+
+    enum Strategy { STREAM, TRANSFER, TRANSFER_FROM, MAPPED, DIRECT_BUFFER, AUTO }
+
+    // Below this size AUTO uses DIRECT_BUFFER
+    static final long SMALL_FILE_SIZE = 256 * 1024;
+
+    // Largest region mapped at once
+    private static final long MAP_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        String command = args.length > 0 ? args[0] : "bench";
+        if (command.equals("copy") && args.length >= 3) {
+            Strategy strategy = args.length > 3 ? Strategy.valueOf(args[3].toUpperCase(Locale.ROOT)) : Strategy.AUTO;
+            int bufferSize = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_BUFFER_SIZE;
+            boolean verify = args.length > 5 && args[5].equals("verify");
+
+            Path source = Paths.get(args[1]);
+            Path target = Paths.get(args[2]);
+            long start = System.nanoTime();
+            long copied = copy(source, target, strategy, bufferSize);
+            System.out.printf("Copied %,d bytes with %s in %d ms%n", copied,
+                    strategy == Strategy.AUTO ? choose(copied) : strategy, (System.nanoTime() - start) / 1_000_000);
+            if (verify) {
+                System.out.println(verify(source, target) ? "Checksums match" : "CHECKSUM MISMATCH");
+            }
+        } else if (command.equals("bench")) {
+            int sizeMb = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+            int bufferSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BUFFER_SIZE;
+            bench(sizeMb, bufferSize);
+        } else {
+            System.out.println("Usage: java FileTransfer copy <source> <target> [strategy] [bufferSize] [verify]");
+            System.out.println("       java FileTransfer bench [sizeMB] [bufferSize]");
+        }
+    }
+
+    static Strategy choose(long size) {
+        return size < SMALL_FILE_SIZE ? Strategy.DIRECT_BUFFER : Strategy.TRANSFER;
+    }
+
+    /**
+     * Copies source to target (created or truncated) and returns the number of bytes copied.
+     * Fails if both name the same file, which truncating the target would empty.
+     */
+    static long copy(Path source, Path target, Strategy strategy, int bufferSize) throws IOException {
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            throw new IOException("Source and target are the same file: " + source + ", " + target);
+        }
+        if (strategy == Strategy.STREAM) {
+            return streamCopy(source, target);
+        }
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            Strategy chosen = strategy == Strategy.AUTO ? choose(size) : strategy;
+            switch (chosen) {
+                case TRANSFER:
+                    return transferCopy(in, out, size, bufferSize);
+                case TRANSFER_FROM:
+                    return transferFromCopy(in, out, size, bufferSize);
+                case MAPPED:
+                    return mappedCopy(in, out, size);
+                case DIRECT_BUFFER:
+                    return bufferCopy(in, out, bufferSize);
+                default:
+                    throw new IllegalArgumentException("Unknown strategy: " + chosen);
+            }
+        }
+    }
+
+    // transferTo may copy less than asked for, so loop until everything is across. It returns 0
+    // when the source has shrunk or the channels cannot transfer; the buffered copy finishes from
+    // there and stops at the real end of the file
+    private static long transferCopy(FileChannel in, FileChannel out, long size, int bufferSize)
+            throws IOException {
+        long position = 0;
+        while (position < size) {
+            long transferred = in.transferTo(position, size - position, out);
+            if (transferred == 0) {
+                in.position(position);
+                return position + bufferCopy(in, out, bufferSize);
+            }
+            position += transferred;
+        }
+        return position;
+    }
+
+    // Same as transferCopy, driven by the target channel
+    private static long transferFromCopy(FileChannel in, FileChannel out, long size, int bufferSize)
+            throws IOException {
+        long position = 0;
+        while (position < size) {
+            long transferred = out.transferFrom(in, position, size - position);
+            if (transferred == 0) {
+                in.position(position);
+                out.position(position);
+                return position + bufferCopy(in, out, bufferSize);
+            }
+            position += transferred;
+        }
+        return position;
+    }
+
+    private static long mappedCopy(FileChannel in, FileChannel out, long size) throws IOException {
+        long position = 0;
+        while (position < size) {
+            long length = Math.min(MAP_CHUNK_SIZE, size - position);
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            while (mapped.hasRemaining()) {
+                out.write(mapped);
+            }
+            position += length;
+        }
+        return position;
+    }
+
+    private static long bufferCopy(FileChannel in, FileChannel out, int bufferSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        long copied = 0;
+        while (in.read(buffer) >= 0 || buffer.position() > 0) {
+            buffer.flip();
+            copied += out.write(buffer);
+            buffer.compact();
+        }
+        return copied;
+    }
+
+    // The TryWithResources way: the whole file in one byte[] sized by available()
+    private static long streamCopy(Path source, Path target) throws IOException {
+        try (FileInputStream input = new FileInputStream(source.toFile());
+             FileOutputStream output = new FileOutputStream(target.toFile())) {
+            DataInputStream inst = new DataInputStream(input);
+            byte[] data = new byte[input.available()];
+            inst.readFully(data);
+            output.write(data);
+            return data.length;
+        }
+    }
+
+    /**
+     * True when both files have the same size and CRC32C.
+     */
+    static boolean verify(Path source, Path target) throws IOException {
+        return Files.size(source) == Files.size(target) && checksum(source) == checksum(target);
+    }
+
+    static long checksum(Path path) throws IOException {
+        Checksum crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Copies a generated file of sizeMb with every strategy, verifies each copy and prints the
+     * best of three runs. The source stays in the page cache, so this compares the CPU and
+     * memory cost of the strategies rather than the disk.
+     */
+    static void bench(int sizeMb, int bufferSize) throws IOException {
+        Path source = Files.createTempFile("transfer-src", ".bin");
+        Path target = Files.createTempFile("transfer-dst", ".bin");
+        try {
+            byte[] block = new byte[1024 * 1024];
+            new Random(1).nextBytes(block);
+            try (FileChannel out = FileChannel.open(source, StandardOpenOption.WRITE)) {
+                for (int i = 0; i < sizeMb; i++) {
+                    out.write(ByteBuffer.wrap(block));
+                }
+            }
+
+            System.out.printf("Copying %d MB, buffer %d KB (best of 3):%n", sizeMb, bufferSize / 1024);
+            for (Strategy strategy : Strategy.values()) {
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < 3; run++) {
+                    long start = System.nanoTime();
+                    copy(source, target, strategy, bufferSize);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                boolean ok = verify(source, target);
+                System.out.printf("  %-14s %8.1f ms %10.1f MB/s  checksum %s%n", strategy, best / 1e6,
+                        sizeMb / (best / 1e9), ok ? "ok" : "MISMATCH");
+            }
+        } finally {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(target);
+        }
+    }
+}
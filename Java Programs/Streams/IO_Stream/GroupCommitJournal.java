@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An append-only journal of lines that many threads can write to.
+ *
+ * InputToFile02 writes every line through a BufferedWriter: the line reaches the file whenever
+ * the buffer happens to fill up, and nothing ever calls fsync. Here the lines are handed to one
+ * writer thread, which commits them in groups: the whole group is written with one write() and,
+ * when the policy asks for it, made durable with one FileChannel.force(). A caller that needs to
+ * know its line is on disk waits on the future returned by append().
+ *
+ * A group is committed when
+ *  - maxRecords lines are waiting, or
+ *  - the oldest waiting line has waited maxDelayMillis (0: as soon as the writer is free), or
+ *  - commit() or close() is called.
+ *
+ * Bigger groups mean fewer fsyncs and more throughput, but a longer wait for each line.
+ *
+ * Usage: java GroupCommitJournal [producers] [recordsPerProducer] [maxRecords] [maxDelayMs] [force|noforce]
+ */
+public class GroupCommitJournal implements AutoCloseable {
+
+    /**
+     * When to commit, and whether a commit forces the data to disk.
+     */
+    static final class Policy {
+        final int maxRecords;
+        final long maxDelayMillis;
+        final boolean force;
+
+        Policy(int maxRecords, long maxDelayMillis, boolean force) {
+            if (maxRecords < 1 || maxDelayMillis < 0) {
+                throw new IllegalArgumentException("maxRecords must be >= 1 and maxDelayMillis >= 0");
+            }
+            this.maxRecords = maxRecords;
+            this.maxDelayMillis = maxDelayMillis;
+            this.force = force;
+        }
+
+        // Commit whatever has arrived each time the writer is free
+        static Policy eager(boolean force) {
+            return new Policy(Integer.MAX_VALUE, 0, force);
+        }
+
+        static Policy everyRecords(int records, boolean force) {
+            return new Policy(records, Long.MAX_VALUE, force);
+        }
+
+        static Policy everyMillis(long millis, boolean force) {
+            return new Policy(Integer.MAX_VALUE, millis, force);
+        }
+
+        // Only commit() and close() commit
+        static Policy onDemand(boolean force) {
+            return new Policy(Integer.MAX_VALUE, Long.MAX_VALUE, force);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("maxRecords=%s, maxDelay=%s, %s",
+                    maxRecords == Integer.MAX_VALUE ? "-" : maxRecords,
+                    maxDelayMillis == Long.MAX_VALUE ? "-" : maxDelayMillis + " ms",
+                    force ? "force" : "no force");
+        }
+    }
+
+    // A line to append, or a commit()/close() request when bytes is null
+    private static final class Record {
+        final byte[] bytes;
+        final long submitted;
+        final boolean close;
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        Record(byte[] bytes, boolean close) {
+            this.bytes = bytes;
+            this.close = close;
+            this.submitted = System.nanoTime();
+        }
+    }
+
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final Policy policy;
+    private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    // Held for reading while a record is checked and queued, for writing while closed is set, so
+    // nothing is queued behind the close request
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    // Written by the writer thread only; read after close() or a completed commit()
+    private long records;
+    private long commits;
+    private final Histogram commitNanos = new Histogram();
+    private final Histogram waitNanos = new Histogram();
+
+    public GroupCommitJournal(Path file, Policy policy) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.policy = policy;
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a line (a newline is added) and returns a future that completes once the line has
+     * been committed under this journal's policy. Blocks while the queue is full.
+     */
+    public CompletableFuture<Void> append(String line) {
+        return submit(new Record((line + '\n').getBytes(StandardCharsets.UTF_8), false));
+    }
+
+    /**
+     * Commits everything appended so far without waiting for the policy; the future completes
+     * when that commit is done.
+     */
+    public CompletableFuture<Void> commit() {
+        return submit(new Record(null, false));
+    }
+
+    /**
+     * Commits what is still queued, stops the writer and closes the file. Lines appended after
+     * close() are rejected.
+     */
+    @Override
+    public void close() throws IOException {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            queue.put(new Record(null, true));
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private CompletableFuture<Void> submit(Record record) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (failure != null) {
+                return CompletableFuture.failedFuture(failure);
+            }
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return record.committed;
+    }
+
+    private void writeLoop() {
+        List<Record> group = new ArrayList<>();
+        boolean running = true;
+        try {
+            while (running) {
+                group.add(queue.take());
+                collect(group);
+                running = !group.get(group.size() - 1).close;
+                commitGroup(group);
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            fail(group, new IOException("Journal writer interrupted", e));
+        }
+        // Only after a failed writer: close() lets nothing be queued behind its request
+        Record late;
+        while ((late = queue.poll()) != null) {
+            late.committed.completeExceptionally(new IllegalStateException("Journal is closed"));
+        }
+    }
+
+    /**
+     * Adds records to the group until the policy says to commit, or until a commit() or close()
+     * request arrives.
+     */
+    private void collect(List<Record> group) throws InterruptedException {
+        long deadline = policy.maxDelayMillis == Long.MAX_VALUE
+                ? Long.MAX_VALUE
+                : group.get(0).submitted + TimeUnit.MILLISECONDS.toNanos(policy.maxDelayMillis);
+        int lines = isRequest(group.get(0)) ? 0 : 1;
+        while (true) {
+            if (isRequest(group.get(group.size() - 1)) || lines >= policy.maxRecords) {
+                return;
+            }
+            // Take everything that is already waiting without blocking
+            Record next = queue.poll();
+            if (next == null) {
+                long remaining = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                next = remaining == Long.MAX_VALUE ? queue.take() : queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+            }
+            group.add(next);
+            if (!isRequest(next)) {
+                lines++;
+            }
+        }
+    }
+
+    private static boolean isRequest(Record record) {
+        return record.bytes == null;
+    }
+
+    // One write (in WRITE_BUFFER_SIZE pieces) and at most one force for the whole group
+    private void commitGroup(List<Record> group) {
+        if (failure != null) {
+            fail(group, failure);
+            return;
+        }
+        long start = System.nanoTime();
+        int lines = 0;
+        try {
+            for (Record record : group) {
+                if (isRequest(record)) {
+                    continue;
+                }
+                lines++;
+                int offset = 0;
+                while (offset < record.bytes.length) {
+                    if (!buffer.hasRemaining()) {
+                        drain();
+                    }
+                    int length = Math.min(buffer.remaining(), record.bytes.length - offset);
+                    buffer.put(record.bytes, offset, length);
+                    offset += length;
+                }
+            }
+            drain();
+            if (policy.force && lines > 0) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            failure = e;
+            fail(group, e);
+            return;
+        }
+
+        long end = System.nanoTime();
+        if (lines > 0) {
+            record(end - start, end - group.get(0).submitted, lines);
+        }
+        for (Record record : group) {
+            record.committed.complete(null);
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void fail(List<Record> group, IOException e) {
+        failure = failure == null ? e : failure;
+        for (Record record : group) {
+            record.committed.completeExceptionally(e);
+        }
+        // Nothing more will be written; fail whatever is still queued
+        Record record;
+        while ((record = queue.poll()) != null) {
+            record.committed.completeExceptionally(e);
+        }
+    }
+
+    private void record(long commit, long oldestWait, int lines) {
+        commitNanos.add(commit);
+        waitNanos.add(oldestWait);
+        commits++;
+        records += lines;
+    }
+
+    /*
+     * Counts of durations in a fixed number of buckets, so a journal that stays open for millions
+     * of commits keeps the same 4 KB per histogram: 8 buckets between each power of two and the
+     * next, so a percentile is off by at most 1/8 of its value.
+     */
+    static final class Histogram {
+        private static final int SUB_BUCKETS = 8;
+        private final long[] counts = new long[SUB_BUCKETS * 62];
+        private long total;
+
+        void add(long nanos) {
+            counts[index(Math.max(nanos, 0))]++;
+            total++;
+        }
+
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+            return (exponent - 2) * SUB_BUCKETS + sub;
+        }
+
+        // The largest value that falls into bucket index
+        private static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            return ((SUB_BUCKETS + index % SUB_BUCKETS + 1L) << shift) - 1;
+        }
+
+        // In ms; the upper bound of the bucket holding the p-th value
+        double percentile(double p) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.min(total - 1, Math.round(p * (total - 1)));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) {
+                    return upperBound(i) / 1e6;
+                }
+            }
+            throw new IllegalStateException("Counts do not add up to " + total);
+        }
+    }
+
+    /**
+     * Commit statistics; call after close() or once a commit() future has completed. "fsync" is
+     * a commit when the policy forces.
+     */
+    public String stats() {
+        return String.format(Locale.ROOT,
+                "%,d records in %,d commits (%.1f records/%s), commit p50/p99 %.3f/%.3f ms, "
+                        + "oldest record wait p50/p99 %.3f/%.3f ms",
+                records, commits, commits == 0 ? 0.0 : (double) records / commits, policy.force ? "fsync" : "write",
+                commitNanos.percentile(0.50), commitNanos.percentile(0.99),
+                waitNanos.percentile(0.50), waitNanos.percentile(0.99));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perProducer = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int maxRecords = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+        long maxDelay = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        boolean force = args.length <= 4 || args[4].equalsIgnoreCase("force");
+
+        System.out.printf("%d producers x %d records, each producer waits for its record to commit%n",
+                producers, perProducer);
+        // A commit per record is what a writer that forces after every line would do
+        run("one commit per record", new Policy(1, 0, force), producers, perProducer);
+        run("group commit", new Policy(maxRecords, maxDelay, force), producers, perProducer);
+    }
+
+    private static void run(String name, Policy policy, int producers, int perProducer) throws Exception {
+        Path file = Files.createTempFile("journal", ".log");
+        try {
+            GroupCommitJournal journal = new GroupCommitJournal(file, policy);
+            Thread[] threads = new Thread[producers];
+            long start = System.nanoTime();
+            for (int p = 0; p < producers; p++) {
+                int id = p;
+                threads[p] = new Thread(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        journal.append("producer " + id + " record " + i).join();
+                    }
+                });
+                threads[p].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            journal.close();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long lines;
+            try (var stream = Files.lines(file)) {
+                lines = stream.count();
+            }
+            if (lines != (long) producers * perProducer) {
+                throw new UncheckedIOException(new IOException("Expected " + producers * perProducer
+                        + " lines, found " + lines));
+            }
+            System.out.printf("%-22s %s%n  %,.0f records/s; %s%n", name + ":", policy,
+                    lines / seconds, journal.stats());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
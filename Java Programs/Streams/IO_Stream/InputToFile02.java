@@ -1,7 +1,7 @@
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
 
 public class InputToFile02 {
 
@@ -10,10 +10,13 @@ public class InputToFile02 {
         String filename = "inputFromConsole.txt";
         
         // Use try-with-resources to automatically close resources
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename,true));   // when FileWriter(filename,true) is set then it append's else it overrides existing
+        // The journal always appends; lines are committed (and forced to disk) in groups of 10,
+        // or after 1 second, whichever comes first
+        try (GroupCommitJournal writer = new GroupCommitJournal(Paths.get(filename),
+                     new GroupCommitJournal.Policy(10, 1000, true));
              Scanner scanner = new Scanner(System.in)) {
             
-            System.out.println("Enter lines of text (type 'exit' to finish):");
+            System.out.println("Enter lines of text (type 'sync' to save now, 'exit' to finish):");
             
             // Loop to read input lines from the console
             while (true) {
@@ -24,16 +27,36 @@ public class InputToFile02 {
                 if (inputLine.equalsIgnoreCase("exit")) {
                     break; // Exit the loop if the user types 'exit'
                 }
+
+                // Commit everything typed so far and wait until it is on disk
+                if (inputLine.equalsIgnoreCase("sync")) {
+                    commit(writer);
+                    System.out.println("Saved");
+                    continue;
+                }
                 
-                // Write the input line to the file
-                writer.write(inputLine);
-                writer.newLine(); // Add a new line in the file
+                // Queue the input line; the journal adds the new line
+                writer.append(inputLine);
             }
             
+            commit(writer); // Commit the remaining lines before reporting
             System.out.println("Input written to " + filename);
+            System.out.println(writer.stats());
         } catch (IOException e) {
             // Handle any IO exceptions that may occur
             System.err.println("Error writing to file: " + e.getMessage());
         }
     }
+
+    // Waits for a commit; a failed write comes out as the IOException it was, not wrapped
+    private static void commit(GroupCommitJournal writer) throws IOException {
+        try {
+            writer.commit().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
 }
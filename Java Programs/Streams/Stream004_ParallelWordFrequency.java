@@ -0,0 +1,327 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Word frequency of a (possibly multi-GB) text file, computed in parallel.
+ *
+ * The file is cut into segments that end on a whitespace byte, every segment is memory-mapped
+ * and tokenized by its own fork-join task into its own primitive table. Each task returns its
+ * table and the tables are merged pairwise on the way back up, so the threads never share state
+ * while counting and nothing is left behind on the pool threads afterwards.
+ *
+ * Tokens follow Streams002_token: split on whitespace, keep only a-z / A-Z, lower case, skip
+ * empty tokens. Only ASCII whitespace is treated as a delimiter.
+ *
+ * Usage: java Stream004_ParallelWordFrequency [file] [top]
+ */
+public class Stream004_ParallelWordFrequency {
+
+    // Smallest segment handed to one task
+    private static final long MIN_SEGMENT_SIZE = 4L * 1024 * 1024;
+
+    // Upper bound of a segment (a single mapping cannot exceed Integer.MAX_VALUE bytes)
+    private static final long MAX_SEGMENT_SIZE = 256L * 1024 * 1024;
+
+    public static void main(String[] args) {
+        Path path = Paths.get(args.length > 0 ? args[0] : "alice.txt");
+        int top = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        try {
+            long start = System.nanoTime();
+            WordTable counts = countWords(path, ForkJoinPool.commonPool());
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            for (WordTable.Entry e : counts.top(top)) {
+                System.out.println(e.word + ": " + e.count);
+            }
+            System.out.println("Distinct words: " + counts.size() + ", total words: " + counts.total()
+                    + "  [" + elapsedMs + " ms, " + ForkJoinPool.commonPool().getParallelism() + " workers]");
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Counts every word of the file on the given pool and returns the merged table.
+     */
+    static WordTable countWords(Path path, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bounds = segmentBounds(channel, pool.getParallelism());
+            return pool.invoke(new SegmentTask(channel, bounds, 0, bounds.length - 1));
+        }
+    }
+
+    /**
+     * Returns n + 1 offsets; segment i is [bounds[i], bounds[i + 1]). Each cut is moved forward
+     * to just after the next whitespace byte so no token spans two segments.
+     */
+    static long[] segmentBounds(FileChannel channel, int parallelism) throws IOException {
+        long size = channel.size();
+        long target = Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, size / (parallelism * 4L)));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = start + target;
+            if (end >= size) {
+                end = size;
+            } else {
+                end = nextWhitespace(channel, end, size, window);
+            }
+            bounds.add(end);
+            start = end;
+        }
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long nextWhitespace(FileChannel channel, long from, long size, ByteBuffer window) throws IOException {
+        long position = from;
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (isWhitespace(window.get(i))) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Same set as Character.isWhitespace for the ASCII range
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+    }
+
+    /**
+     * Splits the segment range in halves until a single segment is left, then maps it and
+     * tokenizes it into a new table. The tables of the two halves are merged, the smaller one
+     * into the larger one, and the result is returned.
+     */
+    static final class SegmentTask extends RecursiveTask<WordTable> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient FileChannel channel;
+        private final long[] bounds;
+        private final int from, to;
+
+        SegmentTask(FileChannel channel, long[] bounds, int from, int to) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected WordTable compute() {
+            if (to - from <= 1) {
+                WordTable table = new WordTable();
+                if (to > from) {
+                    countSegment(bounds[from], bounds[to], table);
+                }
+                return table;
+            }
+            int mid = (from + to) >>> 1;
+            SegmentTask left = new SegmentTask(channel, bounds, from, mid);
+            left.fork();
+            WordTable right = new SegmentTask(channel, bounds, mid, to).compute();
+            WordTable leftTable = left.join();
+
+            if (leftTable.size() < right.size()) {
+                leftTable.mergeInto(right);
+                return right;
+            }
+            right.mergeInto(leftTable);
+            return leftTable;
+        }
+
+        private void countSegment(long start, long end, WordTable table) {
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            tokenize(buffer, table);
+        }
+    }
+
+    /**
+     * Tokenizes the buffer straight from the bytes: the lower-cased letters of the current token
+     * are collected in a scratch array and hashed on the fly, no String is created.
+     */
+    static void tokenize(ByteBuffer buffer, WordTable table) {
+        byte[] word = new byte[64];
+        int length = 0;
+        int hash = 0;
+        int limit = buffer.limit();
+
+        for (int i = buffer.position(); i < limit; i++) {
+            byte b = buffer.get(i);
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z')) {
+                byte lower = (byte) (b | 0x20);
+                if (length == word.length) {
+                    word = Arrays.copyOf(word, length * 2);
+                }
+                word[length++] = lower;
+                hash = 31 * hash + lower;
+            } else if (isWhitespace(b)) {
+                if (length > 0) {
+                    table.add(word, length, hash, 1);
+                    length = 0;
+                    hash = 0;
+                }
+            }
+            // Any other byte (digits, punctuation, non-ASCII) is dropped from the token
+        }
+        if (length > 0) {
+            table.add(word, length, hash, 1);
+        }
+    }
+
+    /**
+     * Open-addressing word -> count table. Keys are kept as bytes in one growing arena and the
+     * counts in a long[], so counting an already seen word allocates nothing.
+     */
+    static final class WordTable {
+        private int[] hashes = new int[1024];
+        private int[] offsets = new int[1024];
+        private int[] lengths = new int[1024];   // 0 marks an empty slot
+        private long[] counts = new long[1024];
+        private byte[] arena = new byte[16 * 1024];
+        private int arenaSize;
+        private int size;
+
+        void add(byte[] word, int length, int hash, long delta) {
+            int mask = hashes.length - 1;
+            int slot = mix(hash) & mask;
+            while (lengths[slot] != 0) {
+                if (hashes[slot] == hash && lengths[slot] == length
+                        && Arrays.equals(arena, offsets[slot], offsets[slot] + length, word, 0, length)) {
+                    counts[slot] += delta;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (arenaSize + length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+            }
+            System.arraycopy(word, 0, arena, arenaSize, length);
+            hashes[slot] = hash;
+            offsets[slot] = arenaSize;
+            lengths[slot] = length;
+            counts[slot] = delta;
+            arenaSize += length;
+
+            // Keep the load factor at or below 0.5
+            if (++size * 2 > hashes.length) {
+                rehash();
+            }
+        }
+
+        void mergeInto(WordTable target) {
+            for (int slot = 0; slot < hashes.length; slot++) {
+                if (lengths[slot] != 0) {
+                    byte[] word = Arrays.copyOfRange(arena, offsets[slot], offsets[slot] + lengths[slot]);
+                    target.add(word, word.length, hashes[slot], counts[slot]);
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        long total() {
+            long total = 0;
+            for (int slot = 0; slot < counts.length; slot++) {
+                total += counts[slot];
+            }
+            return total;
+        }
+
+        /**
+         * The n most frequent words, most frequent first. Only these words become Strings.
+         */
+        List<Entry> top(int n) {
+            List<Integer> slots = new ArrayList<>();
+            for (int slot = 0; slot < hashes.length; slot++) {
+                if (lengths[slot] != 0) {
+                    slots.add(slot);
+                }
+            }
+            slots.sort((a, b) -> Long.compare(counts[b], counts[a]));
+
+            List<Entry> result = new ArrayList<>();
+            for (int i = 0; i < Math.min(n, slots.size()); i++) {
+                int slot = slots.get(i);
+                result.add(new Entry(new String(arena, offsets[slot], lengths[slot], StandardCharsets.US_ASCII), counts[slot]));
+            }
+            return result;
+        }
+
+        private void rehash() {
+            int[] oldHashes = hashes, oldOffsets = offsets, oldLengths = lengths;
+            long[] oldCounts = counts;
+            int capacity = oldHashes.length * 2;
+            hashes = new int[capacity];
+            offsets = new int[capacity];
+            lengths = new int[capacity];
+            counts = new long[capacity];
+
+            int mask = capacity - 1;
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldLengths[i] != 0) {
+                    int slot = mix(oldHashes[i]) & mask;
+                    while (lengths[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    hashes[slot] = oldHashes[i];
+                    offsets[slot] = oldOffsets[i];
+                    lengths[slot] = oldLengths[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        // Spread the bits of the 31-based hash before masking
+        private static int mix(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        static final class Entry {
+            final String word;
+            final long count;
+
+            Entry(String word, long count) {
+                this.word = word;
+                this.count = count;
+            }
+        }
+    }
+}
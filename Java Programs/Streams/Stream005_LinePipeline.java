@@ -0,0 +1,332 @@
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Stream003_ProcessLines as a staged pipeline:
+ *
+ *   reader --> [bounded queue] --> N transform workers --> [bounded queue] --> sink
+ *
+ * The reader cuts the file into batches of lines, the workers transform a batch and encode it
+ * into one block of bytes, and the sink writes the blocks through a channel from a large buffer
+ * instead of one synchronized println per line. Both queues are bounded, so a slow sink blocks
+ * the workers and the reader (back-pressure) instead of letting batches pile up in memory.
+ * The sink writes the batches either in input order or as soon as they are ready. In input
+ * order, batches that finish early wait for the ones before them; the reader takes a permit per
+ * batch that the sink gives back once the batch is written, so one slow batch stops the reader
+ * after a fixed window instead of letting every later batch pile up at the sink.
+ * If a transform throws, the worker hands the error to the sink, which stops waiting for the
+ * missing batch; the reader and the other workers are then cancelled and run() throws.
+ *
+ * Usage: java Stream005_LinePipeline [input] [output|-] [workers] [batchSize] [ordered|unordered] [identity|upper]
+ */
+public class Stream005_LinePipeline {
+
+    private static final int QUEUE_CAPACITY = 16;
+    private static final int SINK_BUFFER_SIZE = 1 << 20;
+
+    // A batch of lines, or of encoded output, with its position in the input
+    private static final class Batch {
+        static final Batch END = new Batch(-1, null, null, null);
+
+        final long sequence;
+        final List<String> lines;
+        final byte[] encoded;
+        // Set only on the batch a worker sends when its transform failed
+        final Throwable failure;
+
+        Batch(long sequence, List<String> lines, byte[] encoded) {
+            this(sequence, lines, encoded, null);
+        }
+
+        private Batch(long sequence, List<String> lines, byte[] encoded, Throwable failure) {
+            this.sequence = sequence;
+            this.lines = lines;
+            this.encoded = encoded;
+            this.failure = failure;
+        }
+
+        static Batch failed(Throwable failure) {
+            return new Batch(-1, null, null, failure);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path input = Paths.get(args.length > 0 ? args[0] : "alice.txt");
+        String output = args.length > 1 ? args[1] : "-";
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+        boolean ordered = args.length <= 4 || args[4].equalsIgnoreCase("ordered");
+        UnaryOperator<String> transform = args.length > 5 && args[5].equalsIgnoreCase("upper")
+                ? line -> line.toUpperCase(Locale.ROOT)
+                : line -> line;
+
+        checkFailingTransform();
+
+        long start = System.nanoTime();
+        long lines;
+        // Lines go to stdout or to a file, through a channel either way
+        try (WritableByteChannel sink = output.equals("-")
+                ? Channels.newChannel(System.out)
+                : new FileOutputStream(output).getChannel()) {
+            lines = run(input, sink, transform, workers, batchSize, ordered);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double megabytes = Files.size(input) / (1024.0 * 1024.0);
+
+        // Statistics go to stderr so they do not mix with the lines on stdout
+        System.err.printf("%d lines, %.1f MB in %.2f s: %,.0f lines/s, %.1f MB/s (%d workers, batch %d, %s)%n",
+                lines, megabytes, seconds, lines / seconds, megabytes / seconds, workers, batchSize,
+                ordered ? "ordered" : "unordered");
+    }
+
+    /**
+     * Runs the pipeline and returns the number of lines written.
+     */
+    static long run(Path input, WritableByteChannel sink, UnaryOperator<String> transform,
+                    int workers, int batchSize, boolean ordered) throws IOException, InterruptedException {
+        BlockingQueue<Batch> toWorkers = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Batch> toSink = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        ExecutorService pool = Executors.newFixedThreadPool(workers + 1);
+        // Enough batches to fill both queues and keep every worker busy
+        Semaphore window = ordered ? new Semaphore(2 * QUEUE_CAPACITY + workers) : null;
+
+        try {
+            Future<Long> reader = pool.submit(() -> read(input, toWorkers, batchSize, workers, window));
+            List<Future<?>> transformers = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                transformers.add(pool.submit(() -> {
+                    transform(toWorkers, toSink, transform);
+                    return null;
+                }));
+            }
+
+            // The sink runs on the calling thread until every worker has sent its END, or one
+            // has failed
+            Throwable failure = write(toSink, sink, workers, window);
+            if (failure != null) {
+                // The reader may be blocked on the window and the other workers on a queue
+                pool.shutdownNow();
+                throw rethrow(failure);
+            }
+
+            for (Future<?> transformer : transformers) {
+                transformer.get();
+            }
+            return reader.get();
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static IOException rethrow(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof UncheckedIOException) {
+            return ((UncheckedIOException) cause).getCause();
+        }
+        throw new IllegalStateException(cause);
+    }
+
+    // Stage 1: read lines into batches; put() blocks while the workers are behind, and acquire()
+    // while the sink is waiting for an earlier batch
+    private static long read(Path input, BlockingQueue<Batch> toWorkers, int batchSize, int workers,
+                             Semaphore window) throws IOException, InterruptedException {
+        long lines = 0;
+        long sequence = 0;
+        boolean cancelled = false;
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            List<String> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                batch.add(line);
+                lines++;
+                if (batch.size() == batchSize) {
+                    if (window != null) {
+                        window.acquire();
+                    }
+                    toWorkers.put(new Batch(sequence++, batch, null));
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                if (window != null) {
+                    window.acquire();
+                }
+                toWorkers.put(new Batch(sequence, batch, null));
+            }
+        } catch (InterruptedException e) {
+            // Cancelled by run(): nobody takes from the queue any more
+            cancelled = true;
+            throw e;
+        } finally {
+            // One END per worker
+            for (int i = 0; !cancelled && i < workers; i++) {
+                toWorkers.put(Batch.END);
+            }
+        }
+        return lines;
+    }
+
+    // Stage 2: transform every line of a batch and encode the batch into one block
+    private static void transform(BlockingQueue<Batch> toWorkers, BlockingQueue<Batch> toSink,
+                                  UnaryOperator<String> transform) throws InterruptedException {
+        Batch last = Batch.END;
+        try {
+            Batch batch;
+            while ((batch = toWorkers.take()) != Batch.END) {
+                StringBuilder block = new StringBuilder(batch.lines.size() * 80);
+                for (String line : batch.lines) {
+                    block.append(transform.apply(line)).append('\n');
+                }
+                toSink.put(new Batch(batch.sequence, null, block.toString().getBytes(StandardCharsets.UTF_8)));
+            }
+        } catch (InterruptedException e) {
+            // Cancelled by run(): nobody takes from the queue any more
+            last = null;
+            throw e;
+        } catch (RuntimeException | Error e) {
+            // This batch will never reach the sink, so the sink must not wait for it
+            last = Batch.failed(e);
+            throw e;
+        } finally {
+            if (last != null) {
+                toSink.put(last);
+            }
+        }
+    }
+
+    // Stage 3: write the blocks through one large buffer, in input order when there is a window;
+    // returns the error of a failed worker, or null once every worker is done
+    private static Throwable write(BlockingQueue<Batch> toSink, WritableByteChannel channel, int workers,
+                                   Semaphore window) throws IOException, InterruptedException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SINK_BUFFER_SIZE);
+        Map<Long, byte[]> pending = new HashMap<>();
+        long next = 0;
+        int running = workers;
+
+        while (running > 0) {
+            Batch batch = toSink.take();
+            if (batch == Batch.END) {
+                running--;
+                continue;
+            }
+            if (batch.failure != null) {
+                return batch.failure;
+            }
+            if (window == null) {
+                put(batch.encoded, buffer, channel);
+                continue;
+            }
+
+            // Hold early batches until the ones before them have been written
+            pending.put(batch.sequence, batch.encoded);
+            byte[] block;
+            while ((block = pending.remove(next)) != null) {
+                put(block, buffer, channel);
+                next++;
+                window.release();
+            }
+        }
+        drain(buffer, channel);
+        return null;
+    }
+
+    private static void put(byte[] block, ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        int offset = 0;
+        while (offset < block.length) {
+            if (!buffer.hasRemaining()) {
+                drain(buffer, channel);
+            }
+            int length = Math.min(buffer.remaining(), block.length - offset);
+            buffer.put(block, offset, length);
+            offset += length;
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /*
+     * A transform that throws in the middle of the file must make run() fail in both modes, not
+     * hang: in ordered mode the sink would otherwise wait forever for the failed batch. The
+     * cancelled reader and workers must not stay blocked on a queue either.
+     */
+    private static void checkFailingTransform() throws Exception {
+        Path input = Files.createTempFile("pipeline", ".txt");
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        int threads = Thread.activeCount() + 1;
+        try {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 20_000; i++) {
+                lines.add("line " + i);
+            }
+            Files.write(input, lines, StandardCharsets.UTF_8);
+            UnaryOperator<String> failing = line -> {
+                if (line.equals("line 5000")) {
+                    throw new IllegalArgumentException("bad line");
+                }
+                return line;
+            };
+            WritableByteChannel discard = Channels.newChannel(OutputStream.nullOutputStream());
+
+            for (boolean ordered : new boolean[] { true, false }) {
+                Future<Long> result = caller.submit(() -> run(input, discard, failing, 2, 16, ordered));
+                try {
+                    result.get(30, TimeUnit.SECONDS);
+                    throw new AssertionError("Failing transform did not fail the " + (ordered ? "ordered" : "unordered") + " pipeline");
+                } catch (TimeoutException e) {
+                    result.cancel(true);
+                    throw new AssertionError("Failing transform hung the " + (ordered ? "ordered" : "unordered") + " pipeline");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (!(cause instanceof IllegalStateException) || !(cause.getCause() instanceof IllegalArgumentException)) {
+                        throw new AssertionError("Unexpected failure", cause);
+                    }
+                }
+            }
+            for (int wait = 0; Thread.activeCount() > threads; wait++) {
+                if (wait == 100) {
+                    throw new AssertionError("Failing transform left " + (Thread.activeCount() - threads) + " pipeline threads blocked");
+                }
+                Thread.sleep(50);
+            }
+            System.err.println("Failing transform: both modes stop with the error");
+        } finally {
+            caller.shutdownNow();
+            Files.deleteIfExists(input);
+        }
+    }
+}
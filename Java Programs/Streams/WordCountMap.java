@@ -0,0 +1,407 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * String -> long counting map for word-frequency aggregation.
+ *
+ * Keys, their cached hashes and the counts live in three parallel arrays and collisions are
+ * resolved by linear probing, so an increment never boxes a Long or allocates a map node. Keys
+ * can be looked up from a char[] or CharSequence slice: the String is only created the first
+ * time a word is seen.
+ *
+ * The main method benchmarks counting() against groupingBy(..., HashMap::new, counting())
+ * as used in Streams002_token.
+ *
+ * Usage: java WordCountMap [file] [rounds]
+ */
+public final class WordCountMap {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private String[] keys;
+    private int[] hashes;
+    private long[] counts;
+    private int size;
+
+    public WordCountMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public WordCountMap(int expectedSize) {
+        // Table is kept at most half full
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, expectedSize * 2 - 1)) << 1;
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+    }
+
+    /**
+     * Collector counting the occurrences of every element, the drop-in replacement of
+     * {@code Collectors.groupingBy(w -> w, HashMap::new, Collectors.counting())}.
+     */
+    public static Collector<CharSequence, ?, WordCountMap> counting() {
+        return Collector.of(
+                WordCountMap::new,
+                WordCountMap::increment,
+                (left, right) -> {
+                    if (left.size < right.size) {
+                        right.addAll(left);
+                        return right;
+                    }
+                    left.addAll(right);
+                    return left;
+                },
+                Collector.Characteristics.UNORDERED,
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    public long increment(CharSequence word) {
+        return add(word, 0, word.length(), 1);
+    }
+
+    public long increment(CharSequence text, int start, int end) {
+        return add(text, start, end, 1);
+    }
+
+    public long increment(char[] text, int offset, int length) {
+        return add(text, offset, length, 1);
+    }
+
+    /**
+     * Adds delta to the count of text[start, end) and returns the new count.
+     */
+    public long add(CharSequence text, int start, int end, long delta) {
+        if (text instanceof String && start == 0 && end == text.length()) {
+            return add((String) text, delta);
+        }
+
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+
+        int mask = keys.length - 1;
+        int length = end - start;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) {
+                return insert(slot, text.subSequence(start, end).toString(), hash, delta);
+            }
+            if (hashes[slot] == hash && key.length() == length && regionMatches(key, text, start)) {
+                return counts[slot] += delta;
+            }
+        }
+    }
+
+    // Whole String key: reuse its cached hashCode() and the intrinsic equals()
+    private long add(String word, long delta) {
+        int hash = word.hashCode();
+        int mask = keys.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) {
+                return insert(slot, word, hash, delta);
+            }
+            if (hashes[slot] == hash && key.equals(word)) {
+                return counts[slot] += delta;
+            }
+        }
+    }
+
+    /**
+     * Adds delta to the count of text[offset, offset + length) and returns the new count.
+     */
+    public long add(char[] text, int offset, int length, long delta) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + text[i];
+        }
+
+        int mask = keys.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) {
+                return insert(slot, new String(text, offset, length), hash, delta);
+            }
+            if (hashes[slot] == hash && key.length() == length && regionMatches(key, text, offset)) {
+                return counts[slot] += delta;
+            }
+        }
+    }
+
+    /**
+     * Returns the count of the word, 0 when it was never added.
+     */
+    public long get(CharSequence word) {
+        int hash = 0;
+        for (int i = 0; i < word.length(); i++) {
+            hash = 31 * hash + word.charAt(i);
+        }
+
+        int mask = keys.length - 1;
+        for (int slot = mix(hash) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && keys[slot].length() == word.length() && regionMatches(keys[slot], word, 0)) {
+                return counts[slot];
+            }
+        }
+        return 0;
+    }
+
+    public void addAll(WordCountMap other) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            String key = other.keys[slot];
+            if (key != null) {
+                add(key, 0, key.length(), other.counts[slot]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(ObjLongConsumer<String> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                action.accept(keys[slot], counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * The k most frequent words, most frequent first (ties in key order). Uses a min-heap of
+     * k slot indices, so it costs O(n log k) and does not sort the whole table.
+     */
+    public List<Map.Entry<String, Long>> topK(int k) {
+        int[] heap = new int[Math.max(0, Math.min(k, size))];
+        int heapSize = 0;
+        for (int slot = 0; slot < keys.length && heap.length > 0; slot++) {
+            if (keys[slot] == null) {
+                continue;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++);
+            } else if (less(heap[0], slot)) {
+                heap[0] = slot;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        // Pop the smallest first and fill the result from the back
+        Map.Entry<String, Long>[] result = newEntryArray(heapSize);
+        while (heapSize > 0) {
+            int slot = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+            result[heapSize] = Map.entry(keys[slot], counts[slot]);
+        }
+        return Arrays.asList(result);
+    }
+
+    public Map<String, Long> toMap() {
+        Map<String, Long> map = new HashMap<>(size * 2);
+        forEach(map::put);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        forEach(map::put);
+        return map.toString();
+    }
+
+    private long insert(int slot, String key, int hash, long delta) {
+        keys[slot] = key;
+        hashes[slot] = hash;
+        counts[slot] = delta;
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+        return delta;
+    }
+
+    private void rehash() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        int capacity = oldKeys.length * 2;
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = mix(oldHashes[i]) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    // a is ranked below b: smaller count, or same count and later key
+    private boolean less(int a, int b) {
+        if (counts[a] != counts[b]) {
+            return counts[a] < counts[b];
+        }
+        return keys[a].compareTo(keys[b]) > 0;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(heap[i], heap[parent])) {
+                break;
+            }
+            int tmp = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = tmp;
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int heapSize) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= heapSize) {
+                break;
+            }
+            int smallest = left + 1 < heapSize && less(heap[left + 1], heap[left]) ? left + 1 : left;
+            if (!less(heap[smallest], heap[i])) {
+                break;
+            }
+            int tmp = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = tmp;
+            i = smallest;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map.Entry<String, Long>[] newEntryArray(int length) {
+        return (Map.Entry<String, Long>[]) new Map.Entry<?, ?>[length];
+    }
+
+    private static boolean regionMatches(String key, CharSequence text, int start) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(String key, char[] text, int offset) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != text[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Hashes are String.hashCode() values; spread them before masking
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path path = Paths.get(args.length > 0 ? args[0] : "alice.txt");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        // Same tokens as Streams002_token
+        String contents = Files.readString(path, StandardCharsets.UTF_8);
+        List<String> words = new ArrayList<>();
+        try (Scanner scanner = new Scanner(contents)) {
+            scanner.tokens()
+                    .map(word -> word.replaceAll("[^a-zA-Z]", "").toLowerCase())
+                    .filter(word -> !word.isEmpty())
+                    .forEach(words::add);
+        }
+        System.out.println("Tokens: " + words.size());
+
+        Map<String, Long> expected = null;
+        WordCountMap actual = null;
+        long hashMapBest = Long.MAX_VALUE, counterBest = Long.MAX_VALUE, sliceBest = Long.MAX_VALUE;
+
+        // The first half of the rounds is warm-up; the best time of the rest is reported
+        for (int round = 0; round < rounds * 2; round++) {
+            long start = System.nanoTime();
+            expected = words.stream()
+                    .collect(Collectors.groupingBy(word -> word, HashMap::new, Collectors.counting()));
+            long hashMapTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            actual = words.stream().collect(counting());
+            long counterTime = System.nanoTime() - start;
+
+            // Tokenize the raw chars and count slices, no String per token
+            start = System.nanoTime();
+            WordCountMap sliced = countSlices(contents.toCharArray());
+            long sliceTime = System.nanoTime() - start;
+
+            if (round >= rounds) {
+                hashMapBest = Math.min(hashMapBest, hashMapTime);
+                counterBest = Math.min(counterBest, counterTime);
+                sliceBest = Math.min(sliceBest, sliceTime);
+            }
+            if (!sliced.toMap().equals(expected)) {
+                throw new IllegalStateException("Slice counting differs from groupingBy");
+            }
+        }
+
+        if (!actual.toMap().equals(expected)) {
+            throw new IllegalStateException("WordCountMap differs from groupingBy");
+        }
+        System.out.println("groupingBy(HashMap, counting) : " + hashMapBest / 1_000 + " us");
+        System.out.println("WordCountMap.counting()       : " + counterBest / 1_000 + " us");
+        System.out.println("WordCountMap slices (tokenize + count, no String per token): " + sliceBest / 1_000 + " us");
+        System.out.println("Top 10: " + actual.topK(10));
+    }
+
+    /**
+     * Whitespace-delimited tokens, non-ASCII-letters dropped, lower case, like Streams002_token,
+     * but counted straight from a reused char[] scratch buffer.
+     */
+    static WordCountMap countSlices(char[] text) {
+        WordCountMap map = new WordCountMap();
+        char[] word = new char[64];
+        int length = 0;
+        for (int i = 0; i <= text.length; i++) {
+            char c = i < text.length ? text[i] : ' ';
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                if (length == word.length) {
+                    word = Arrays.copyOf(word, length * 2);
+                }
+                word[length++] = (char) (c | 0x20);
+            } else if (Character.isWhitespace(c)) {
+                if (length > 0) {
+                    map.increment(word, 0, length);
+                    length = 0;
+                }
+            }
+        }
+        return map;
+    }
+}
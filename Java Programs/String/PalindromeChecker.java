@@ -0,0 +1,247 @@
+package String;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Scanner;
+
+/**
+ * Palindrome check without copying: the characters are compared from both ends in place, on a
+ * CharSequence or on a slice of UTF-8 bytes. Surrogate pairs (and multi-byte UTF-8 sequences)
+ * are compared as whole code points: an emoji between two a's is a palindrome, even though
+ * reversing its UTF-16 chars (as StringBuilder.reverse() would without its surrogate fix-up)
+ * swaps the two halves of the pair.
+ *
+ * The bulk mode reads newline-separated candidates from a file or stdin in large byte chunks and
+ * checks every line inside the chunk, without creating a String per line.
+ *
+ * Usage: java String.PalindromeChecker [word ...]
+ *        java String.PalindromeChecker bulk [file|-] [matchesFile]
+ *        java String.PalindromeChecker check
+ */
+public class PalindromeChecker {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    public static boolean isPalindrome(CharSequence s) {
+        int left = 0;
+        int right = s.length();
+        while (left < right) {
+            int first = Character.codePointAt(s, left);
+            int last = Character.codePointBefore(s, right);
+            if (first != last) {
+                return false;
+            }
+            left += Character.charCount(first);
+            right -= Character.charCount(last);
+        }
+        return true;
+    }
+
+    /**
+     * Checks the UTF-8 text in bytes[from, to). Two code points are equal exactly when their
+     * UTF-8 sequences are, so the sequences are compared byte by byte without decoding.
+     */
+    public static boolean isPalindrome(byte[] bytes, int from, int to) {
+        int left = from;
+        int right = to;
+        while (left < right) {
+            byte first = bytes[left];
+            byte last = bytes[right - 1];
+            if (first >= 0 && last >= 0) {
+                // ASCII on both ends
+                if (first != last) {
+                    return false;
+                }
+                left++;
+                right--;
+                continue;
+            }
+
+            int firstLength = sequenceLength(first);
+            // Walk back over continuation bytes (10xxxxxx) to the start of the last sequence
+            int lastStart = right - 1;
+            while (lastStart > left && (bytes[lastStart] & 0xC0) == 0x80) {
+                lastStart--;
+            }
+            int lastLength = right - lastStart;
+            if (firstLength != lastLength) {
+                return false;
+            }
+            if (lastStart <= left) {
+                // The middle code point
+                return true;
+            }
+            for (int i = 0; i < firstLength; i++) {
+                if (bytes[left + i] != bytes[lastStart + i]) {
+                    return false;
+                }
+            }
+            left += firstLength;
+            right = lastStart;
+        }
+        return true;
+    }
+
+    // Length of the UTF-8 sequence starting with the given byte (1 for invalid lead bytes)
+    private static int sequenceLength(byte lead) {
+        if (lead >= 0) {
+            return 1;
+        }
+        if ((lead & 0xE0) == 0xC0) {
+            return 2;
+        }
+        if ((lead & 0xF0) == 0xE0) {
+            return 3;
+        }
+        if ((lead & 0xF8) == 0xF0) {
+            return 4;
+        }
+        return 1;
+    }
+
+    /**
+     * Checks every non-empty line of the input and writes the palindromic lines to matches when
+     * it is not null. Lines are checked inside the read buffer; the buffer only grows when a
+     * single line is longer than it.
+     *
+     * @return { lines checked, palindromes found }
+     */
+    public static long[] checkLines(InputStream in, OutputStream matches) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int filled = 0;
+        long lines = 0;
+        long palindromes = 0;
+
+        while (true) {
+            int read = in.read(buffer, filled, buffer.length - filled);
+            boolean endOfInput = read < 0;
+            if (!endOfInput) {
+                filled += read;
+            }
+
+            int lineStart = 0;
+            for (int i = 0; i < filled; i++) {
+                if (buffer[i] == '\n') {
+                    int line = checkLine(buffer, lineStart, i, matches);
+                    lines += line & 1;
+                    palindromes += line >> 1;
+                    lineStart = i + 1;
+                }
+            }
+
+            if (endOfInput) {
+                // Last line without a trailing newline
+                int line = checkLine(buffer, lineStart, filled, matches);
+                lines += line & 1;
+                palindromes += line >> 1;
+                break;
+            }
+
+            // Keep the unfinished line at the start of the buffer
+            System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+            filled -= lineStart;
+            if (filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        return new long[] { lines, palindromes };
+    }
+
+    // 0 for an empty line (also "\r" alone), 1 for a checked line, 3 for a palindrome
+    private static int checkLine(byte[] buffer, int start, int end, OutputStream matches) throws IOException {
+        // Windows line endings
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return 0;
+        }
+        if (!isPalindrome(buffer, start, end)) {
+            return 1;
+        }
+        if (matches != null) {
+            matches.write(buffer, start, end - start);
+            matches.write('\n');
+        }
+        return 3;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("check")) {
+            check();
+            System.out.println("Checks passed");
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bulk")) {
+            bulk(args);
+            return;
+        }
+
+        if (args.length > 0) {
+            for (String word : args) {
+                System.out.println(word + ": " + (isPalindrome(word) ? "palindrome" : "not palindrome"));
+            }
+            return;
+        }
+
+        // Same as palindromicString: one token from the console
+        try (Scanner sc = new Scanner(System.in)) {
+            String str = sc.next();
+            if (isPalindrome(str)) {
+                System.out.println("String is palindrome");
+            } else {
+                System.out.println("String is not palindrome");
+            }
+        }
+    }
+
+    private static void check() throws IOException {
+        checkLines("level\nabc\n\nnoon\n", 3, 2);
+        // Blank lines with Windows endings are not counted either
+        checkLines("level\r\nabc\r\n\r\nnoon\r\nxyz", 4, 2);
+        checkLines("\r\n\r\n\r", 0, 0);
+        checkLines("a\uD83D\uDE00a\n\u00e9t\u00e8\n", 2, 1);
+        // A line longer than the read buffer
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            longLine.append((char) ('a' + i % 26));
+        }
+        String palindrome = longLine + new StringBuilder(longLine).reverse().toString();
+        checkLines("x\r\n" + palindrome + "\r\n", 2, 2);
+    }
+
+    private static void checkLines(String input, long lines, long palindromes) throws IOException {
+        long[] result = checkLines(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), null);
+        if (result[0] != lines || result[1] != palindromes) {
+            throw new AssertionError(input.replace("\r", "\\r").replace("\n", "\\n") + ": " + result[0]
+                    + " lines and " + result[1] + " palindromes, expected " + lines + " and " + palindromes);
+        }
+    }
+
+    private static void bulk(String[] args) throws IOException {
+        String input = args.length > 1 ? args[1] : "-";
+        String output = args.length > 2 ? args[2] : null;
+
+        long start = System.nanoTime();
+        long[] result;
+        try (InputStream in = input.equals("-") ? System.in : new FileInputStream(input);
+             OutputStream matches = output == null ? null : new BufferedOutputStream(new FileOutputStream(output), CHUNK_SIZE)) {
+            result = checkLines(in, matches);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Lines checked : " + result[0]);
+        System.out.println("Palindromes   : " + result[1]);
+        System.out.println("Time          : " + elapsedMs + " ms");
+        if (output != null) {
+            System.out.println("Matches written to " + output);
+        }
+    }
+}
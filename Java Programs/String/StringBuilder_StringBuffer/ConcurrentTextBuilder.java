@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only text that many threads can append to without locks.
+ *
+ * Every thread appends into its own segment (a plain StringBuilder only that thread touches), so
+ * there is nothing to lock and nothing to corrupt. toString() stitches the segments together in a
+ * deterministic order:
+ *  - THREAD: segment after segment, ordered by thread id (the order the threads were created)
+ *  - TIMESTAMP: every append in the order of a global sequence number taken when it was made
+ *
+ * toString() must be called once the appending threads are done (e.g. after join()).
+ *
+ * The main method runs a correctness stress test, then compares the throughput with a shared
+ * StringBuffer and a shared (unsafe) StringBuilder, as in StringBuilder_StringBuffer_Thread.
+ *
+ * Usage: java ConcurrentTextBuilder [threads] [appendsPerThread]
+ */
+public class ConcurrentTextBuilder {
+
+    enum Order { THREAD, TIMESTAMP }
+
+    private final Order order;
+    private final ConcurrentLinkedQueue<Segment> segments = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadLocal<Segment> local = ThreadLocal.withInitial(this::newSegment);
+
+    public ConcurrentTextBuilder(Order order) {
+        this.order = order;
+    }
+
+    public ConcurrentTextBuilder append(CharSequence text) {
+        local.get().append(text);
+        return this;
+    }
+
+    public ConcurrentTextBuilder append(int value) {
+        local.get().append(value);
+        return this;
+    }
+
+    public int length() {
+        int length = 0;
+        for (Segment segment : segments) {
+            length += segment.text.length();
+        }
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        List<Segment> sorted = new ArrayList<>(segments);
+        sorted.sort(Comparator.comparingLong(segment -> segment.threadId));
+
+        StringBuilder result = new StringBuilder(length());
+        if (order == Order.THREAD) {
+            for (Segment segment : sorted) {
+                result.append(segment.text);
+            }
+            return result.toString();
+        }
+
+        // k-way merge: the appends of every segment are already in sequence order
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Comparator.comparingLong(Cursor::stamp));
+        for (Segment segment : sorted) {
+            if (segment.count > 0) {
+                heads.add(new Cursor(segment));
+            }
+        }
+        while (!heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            Segment segment = cursor.segment;
+            int start = cursor.index == 0 ? 0 : segment.ends[cursor.index - 1];
+            result.append(segment.text, start, segment.ends[cursor.index]);
+            if (++cursor.index < segment.count) {
+                heads.add(cursor);
+            }
+        }
+        return result.toString();
+    }
+
+    private Segment newSegment() {
+        Segment segment = new Segment(Thread.currentThread().getId(), order == Order.TIMESTAMP);
+        segments.add(segment);
+        return segment;
+    }
+
+    // Owned by a single thread; for TIMESTAMP order it also records the stamp and end of every append
+    private final class Segment {
+        final long threadId;
+        final StringBuilder text = new StringBuilder();
+        long[] stamps;
+        int[] ends;
+        int count;
+
+        Segment(long threadId, boolean stamped) {
+            this.threadId = threadId;
+            if (stamped) {
+                stamps = new long[16];
+                ends = new int[16];
+            }
+        }
+
+        void append(CharSequence value) {
+            text.append(value);
+            stamp();
+        }
+
+        void append(int value) {
+            text.append(value);
+            stamp();
+        }
+
+        private void stamp() {
+            if (stamps == null) {
+                return;
+            }
+            if (count == stamps.length) {
+                stamps = Arrays.copyOf(stamps, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            stamps[count] = sequence.getAndIncrement();
+            ends[count++] = text.length();
+        }
+    }
+
+    private static final class Cursor {
+        final Segment segment;
+        int index;
+
+        Cursor(Segment segment) {
+            this.segment = segment;
+        }
+
+        long stamp() {
+            return segment.stamps[index];
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int appends = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        stressTest(threads, 100_000);
+
+        System.out.println("Throughput, " + threads + " threads x " + appends + " appends:");
+        // First round is warm-up
+        for (int round = 0; round < 2; round++) {
+            StringBuffer sbuffer = new StringBuffer();
+            long bufferTime = timeAppends(threads, appends, i -> sbuffer.append(i));
+
+            StringBuilder sbuilder = new StringBuilder();
+            long builderTime;
+            try {
+                builderTime = timeAppends(threads, appends, i -> sbuilder.append(i));
+            } catch (RuntimeException e) {
+                builderTime = -1;
+            }
+
+            ConcurrentTextBuilder ctbThread = new ConcurrentTextBuilder(Order.THREAD);
+            long threadOrderTime = timeAppends(threads, appends, i -> ctbThread.append(i));
+
+            ConcurrentTextBuilder ctbStamped = new ConcurrentTextBuilder(Order.TIMESTAMP);
+            long timestampTime = timeAppends(threads, appends, i -> ctbStamped.append(i));
+
+            if (round == 1) {
+                long expected = (long) threads * appends;
+                report("StringBuffer", bufferTime, sbuffer.length() == expected);
+                report("StringBuilder (unsafe)", builderTime, sbuilder.length() == expected);
+                report("ConcurrentTextBuilder THREAD", threadOrderTime, ctbThread.length() == expected);
+                report("ConcurrentTextBuilder TIMESTAMP", timestampTime, ctbStamped.length() == expected);
+            }
+        }
+    }
+
+    /**
+     * Every thread appends "t<id>:<n>;" tokens. Checks that nothing was lost or mixed up and that
+     * each thread's tokens keep their order, for both orders.
+     */
+    static void stressTest(int threads, int appends) throws InterruptedException {
+        for (Order order : Order.values()) {
+            ConcurrentTextBuilder text = new ConcurrentTextBuilder(order);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                String prefix = "t" + t + ":";
+                workers[t] = new Thread(() -> {
+                    for (int i = 0; i < appends; i++) {
+                        // One append per token: appends of different threads may interleave
+                        text.append(prefix + i + ";");
+                    }
+                });
+            }
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            String result = text.toString();
+            if (!result.equals(text.toString())) {
+                throw new IllegalStateException(order + ": toString() is not deterministic");
+            }
+
+            // Tokens of a thread must appear as 0, 1, 2, ... and every count must be complete
+            int[] next = new int[threads];
+            int tokenCount = 0;
+            int position = 0;
+            while (position < result.length()) {
+                int colon = result.indexOf(':', position);
+                int semicolon = result.indexOf(';', colon);
+                int thread = Integer.parseInt(result, position + 1, colon, 10);
+                int value = Integer.parseInt(result, colon + 1, semicolon, 10);
+                if (value != next[thread]++) {
+                    throw new IllegalStateException(order + ": thread " + thread + " token out of order: " + value);
+                }
+                tokenCount++;
+                position = semicolon + 1;
+            }
+            if (tokenCount != threads * appends) {
+                throw new IllegalStateException(order + ": expected " + threads * appends + " tokens, found " + tokenCount);
+            }
+            System.out.println("Stress test " + order + ": " + tokenCount + " tokens from " + threads + " threads, ok");
+        }
+    }
+
+    interface IntAppender {
+        void append(int i);
+    }
+
+    private static long timeAppends(int threads, int appends, IntAppender appender) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        RuntimeException[] failure = new RuntimeException[1];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < appends; i++) {
+                        appender.append(i % 10);
+                    }
+                } catch (RuntimeException e) {
+                    // StringBuilder may throw ArrayIndexOutOfBoundsException when appended concurrently
+                    failure[0] = e;
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static void report(String name, long millis, boolean lengthOk) {
+        String time = millis < 0 ? "failed" : millis + " ms";
+        System.out.printf("  %-32s: %9s  length ok: %b%n", name, time, lengthOk);
+    }
+}
@@ -0,0 +1,261 @@
+import java.util.concurrent.atomic.LongAdder;
+
+import Benchmark.Measurement;
+
+/**
+ * Per-thread pool of reusable StringBuilders, grouped in power-of-two size classes.
+ *
+ * acquire(expectedLength) hands out an empty builder whose capacity is at least the expected
+ * length, rounded up to its size class, so the builder rarely has to grow. A builder that did
+ * grow is filed under its new, larger class when it is released, so the next acquire of that
+ * size gets the already grown array instead of growing (and copying) again.
+ *
+ * What a thread keeps is bounded: an acquire takes a builder at most one class larger than it
+ * asked for (so a short request does not walk off with a huge array), and a release that would
+ * take the thread's pooled capacity over maxRetainedPerThread chars leaves the builder to the
+ * garbage collector. A thread that is done with the pool, e.g. before its executor is shut
+ * down or reused for other work, drops what it holds with remove().
+ *
+ * Adopting it only touches the creation and the end of a builder's life:
+ *
+ *   StringBuilder sb = pool.acquire(4_000_000);      // was: new StringBuilder()
+ *   ... appends unchanged ...
+ *   String s = pool.toStringAndRelease(sb);          // was: sb.toString()
+ *
+ * Usage (Measurement is shared with the other allocation benchmarks):
+ *   javac -d out ../../Benchmark/Measurement.java StringBuilderPool.java
+ *   java -cp out StringBuilderPool [requests] [appendsPerRequest]
+ */
+public class StringBuilderPool {
+
+    // Smallest and largest size class, in chars
+    private static final int MIN_CLASS_BITS = 8;     // 256
+    private static final int MAX_CLASS_BITS = 24;    // 16 M; larger builders are not kept
+    // Classes above the wanted one that acquire may take a builder from
+    private static final int MAX_FALL_THROUGH = 1;
+
+    private final int buildersPerClass;
+    private final long maxRetainedPerThread;
+    private final ThreadLocal<Local> local;
+
+    private final LongAdder acquires = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    // One thread's builders by size class, and their total capacity
+    private static final class Local {
+        final StringBuilder[][] classes;
+        long retained;
+
+        Local(int buildersPerClass) {
+            classes = new StringBuilder[MAX_CLASS_BITS - MIN_CLASS_BITS + 1][buildersPerClass];
+        }
+    }
+
+    public StringBuilderPool() {
+        this(4, 1 << 25);
+    }
+
+    /**
+     * @param maxRetainedPerThread most capacity, in chars, kept pooled by one thread; with compact
+     *                             strings a char of Latin-1 text takes one byte
+     */
+    public StringBuilderPool(int buildersPerClass, long maxRetainedPerThread) {
+        if (buildersPerClass < 1 || maxRetainedPerThread < 0) {
+            throw new IllegalArgumentException("buildersPerClass must be >= 1 and maxRetainedPerThread >= 0");
+        }
+        this.buildersPerClass = buildersPerClass;
+        this.maxRetainedPerThread = maxRetainedPerThread;
+        this.local = ThreadLocal.withInitial(() -> new Local(buildersPerClass));
+    }
+
+    /**
+     * Returns an empty builder with room for at least expectedLength chars. It is reused from
+     * this thread's pool when one of a large enough size class is available.
+     */
+    public StringBuilder acquire(int expectedLength) {
+        acquires.increment();
+        int wanted = classOf(Math.max(expectedLength, 1), true);
+        if (wanted <= MAX_CLASS_BITS) {
+            Local pooled = local.get();
+            // Take from the wanted class, or the next one up if it is empty
+            int largest = Math.min(wanted + MAX_FALL_THROUGH, MAX_CLASS_BITS);
+            for (int bits = wanted; bits <= largest; bits++) {
+                StringBuilder[] stack = pooled.classes[bits - MIN_CLASS_BITS];
+                for (int i = buildersPerClass - 1; i >= 0; i--) {
+                    StringBuilder builder = stack[i];
+                    if (builder != null) {
+                        stack[i] = null;
+                        pooled.retained -= builder.capacity();
+                        reuses.increment();
+                        // Compact strings keep Latin-1 text in one byte per char
+                        bytesSaved.add(builder.capacity());
+                        return builder;
+                    }
+                }
+            }
+        }
+        return new StringBuilder(wanted <= MAX_CLASS_BITS ? 1 << wanted : expectedLength);
+    }
+
+    /**
+     * Gives the builder back to this thread's pool. Builders larger than the largest size class,
+     * arriving when their class is full, or over the thread's budget, are left to the garbage
+     * collector.
+     */
+    public void release(StringBuilder builder) {
+        int capacity = builder.capacity();
+        int bits = classOf(capacity, false);
+        if (bits < MIN_CLASS_BITS || bits > MAX_CLASS_BITS) {
+            return;
+        }
+        Local pooled = local.get();
+        if (pooled.retained + capacity > maxRetainedPerThread) {
+            return;
+        }
+        builder.setLength(0);
+        StringBuilder[] stack = pooled.classes[bits - MIN_CLASS_BITS];
+        for (int i = 0; i < buildersPerClass; i++) {
+            if (stack[i] == null) {
+                stack[i] = builder;
+                pooled.retained += capacity;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the builders this thread has pooled, and the thread-local that holds them.
+     */
+    public void remove() {
+        local.remove();
+    }
+
+    // Capacity, in chars, this thread has pooled
+    long retained() {
+        return local.get().retained;
+    }
+
+    public String toStringAndRelease(StringBuilder builder) {
+        String result = builder.toString();
+        release(builder);
+        return result;
+    }
+
+    public long acquires() {
+        return acquires.sum();
+    }
+
+    public double reuseRate() {
+        long total = acquires.sum();
+        return total == 0 ? 0 : (double) reuses.sum() / total;
+    }
+
+    // Approximate heap not allocated thanks to reuse
+    public long bytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("acquires=%d, reuse rate=%.1f%%, bytes saved=%,d",
+                acquires(), reuseRate() * 100, bytesSaved());
+    }
+
+    // Size class of a capacity: log2 rounded up (for requests) or down (for returned builders)
+    private static int classOf(int capacity, boolean roundUp) {
+        int bits = 31 - Integer.numberOfLeadingZeros(capacity);
+        if (roundUp && Integer.bitCount(capacity) > 1) {
+            bits++;
+        }
+        return roundUp ? Math.max(bits, MIN_CLASS_BITS) : bits;
+    }
+
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int appends = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int expectedLength = "InterviewBit".length() + appends * 4;
+
+        checkLimits();
+
+        StringBuilderPool pool = new StringBuilderPool();
+        // The first rounds are warm-up, the last one is reported
+        for (int round = 0; round < 3; round++) {
+            Measurement plain = Measurement.start();
+            long plainLength = plainRequests(requests, appends);
+            plain.stop();
+
+            Measurement pooled = Measurement.start();
+            long pooledLength = pooledRequests(pool, requests, appends, expectedLength);
+            pooled.stop();
+
+            if (plainLength != pooledLength) {
+                throw new IllegalStateException("Pooled builders produced different output");
+            }
+            if (round == 2) {
+                System.out.println(requests + " requests x " + appends + " appends:");
+                System.out.println("  new StringBuilder : " + plain);
+                System.out.println("  StringBuilderPool : " + pooled);
+                System.out.println("  pool: " + pool);
+            }
+        }
+    }
+
+    private static void checkLimits() {
+        StringBuilderPool pool = new StringBuilderPool(4, 3 << 20);
+
+        // A short request does not get a builder far larger than it asked for
+        StringBuilder huge = pool.acquire(1 << 20);
+        pool.release(huge);
+        StringBuilder small = pool.acquire(256);
+        if (small == huge || small.capacity() != 256) {
+            throw new AssertionError("acquire(256) returned a builder of capacity " + small.capacity());
+        }
+        // One class up is still taken
+        if (pool.acquire(600_000) != huge) {
+            throw new AssertionError("acquire(600000) did not reuse the 1 M builder");
+        }
+
+        // Releases beyond the budget are dropped
+        StringBuilder[] builders = new StringBuilder[4];
+        for (int i = 0; i < builders.length; i++) {
+            builders[i] = pool.acquire(1 << 20);
+        }
+        for (StringBuilder builder : builders) {
+            pool.release(builder);
+        }
+        if (pool.retained() != 3 << 20) {
+            throw new AssertionError("Retained " + pool.retained() + " chars, budget is " + (3 << 20));
+        }
+
+        pool.remove();
+        if (pool.retained() != 0) {
+            throw new AssertionError("remove() left " + pool.retained() + " chars pooled");
+        }
+    }
+
+    // What StringBuilder_StringBuffer_speedCompare does, once per request
+    private static long plainRequests(int requests, int appends) {
+        long length = 0;
+        for (int r = 0; r < requests; r++) {
+            StringBuilder temp = new StringBuilder("InterviewBit");
+            for (int i = 0; i < appends; i++) {
+                temp.append("abcd");
+            }
+            length += temp.toString().length();
+        }
+        return length;
+    }
+
+    private static long pooledRequests(StringBuilderPool pool, int requests, int appends, int expectedLength) {
+        long length = 0;
+        for (int r = 0; r < requests; r++) {
+            StringBuilder temp = pool.acquire(expectedLength).append("InterviewBit");
+            for (int i = 0; i < appends; i++) {
+                temp.append("abcd");
+            }
+            length += pool.toStringAndRelease(temp).length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,220 @@
+package String;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A local, bounded pool of canonical Strings, an alternative to String.intern() for data with
+ * many repeated values (names read by a parser, a status column, ...).
+ *
+ * Equal values passed through the same pool usually come back as the same object, so most
+ * duplicates can be garbage collected. It is a deduplication cache, not a guarantee: a value can
+ * be evicted or collected between two lookups, after which an equal value gets a new canonical
+ * object, so compare the results with equals(), not == (see StringObjEquality).
+ *
+ *  - bounded: a fixed number of slots; a new value may evict the one in its slot
+ *  - weak: a canonical String that nobody else uses any more is not kept alive by the pool
+ *  - concurrent: slots are read and replaced atomically, without locks
+ *  - not global: every parser or loader can have its own pool, sized for its data
+ *
+ * intern(char[], offset, length) looks the value up straight from a parser's buffer, so a
+ * repeated value does not even create the temporary String.
+ *
+ * Usage: java String.StringInterner [values] [distinct]
+ */
+public class StringInterner {
+
+    // A value is looked for in its home slot and the next PROBES - 1 slots
+    private static final int PROBES = 4;
+
+    // A slot; the hash is final so a slot read by another thread is always complete
+    private static final class Entry extends WeakReference<String> {
+        final int hash;
+
+        Entry(String value, int hash) {
+            super(value);
+            this.hash = hash;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    public StringInterner(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the canonical instance equal to value; value itself becomes canonical on a miss.
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int hash = value.hashCode();
+        int slot = mix(hash) & mask;
+
+        String found = lookup(slot, hash, value);
+        if (found != null) {
+            recordHit(value.length());
+            return found;
+        }
+        store(slot, value, hash);
+        return value;
+    }
+
+    /**
+     * Returns the canonical String of chars[offset, offset + length). A String is only created
+     * when the value is not in the pool.
+     */
+    public String intern(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = mix(hash) & mask;
+
+        for (int probe = 0; probe < PROBES; probe++) {
+            Entry entry = slots.get((slot + probe) & mask);
+            if (entry != null && entry.hash == hash) {
+                String candidate = entry.get();
+                if (candidate != null && candidate.length() == length && matches(candidate, chars, offset)) {
+                    recordHit(length);
+                    return candidate;
+                }
+            }
+        }
+
+        String value = new String(chars, offset, length);
+        store(slot, value, hash);
+        return value;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public double hitRate() {
+        long total = hits.sum() + misses.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    // Estimated heap of the duplicate Strings that did not have to be kept
+    public long bytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, hit rate=%.1f%%, bytes saved=%,d",
+                hits(), misses(), hitRate() * 100, bytesSaved());
+    }
+
+    private String lookup(int slot, int hash, String value) {
+        for (int probe = 0; probe < PROBES; probe++) {
+            Entry entry = slots.get((slot + probe) & mask);
+            if (entry != null && entry.hash == hash) {
+                String candidate = entry.get();
+                if (value.equals(candidate)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Take the first free (empty or collected) slot of the probe window, else evict the home slot
+    private void store(int slot, String value, int hash) {
+        misses.increment();
+        Entry entry = new Entry(value, hash);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int index = (slot + probe) & mask;
+            Entry current = slots.get(index);
+            if ((current == null || current.get() == null) && slots.compareAndSet(index, current, entry)) {
+                return;
+            }
+        }
+        slots.set(slot, entry);
+    }
+
+    private void recordHit(int length) {
+        hits.increment();
+        // String object (24) + array header (16) + Latin-1 contents, 8-byte aligned
+        bytesSaved.add(24 + ((16 + length + 7) & ~7));
+    }
+
+    private static boolean matches(String candidate, char[] chars, int offset) {
+        for (int i = 0; i < candidate.length(); i++) {
+            if (candidate.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        // Values as a parser would produce them: a new String object for every occurrence
+        String[] vocabulary = new String[distinct];
+        for (int i = 0; i < distinct; i++) {
+            vocabulary[i] = "status-" + i;
+        }
+        Random random = new Random(7);
+        char[][] parsed = new char[count][];
+        for (int i = 0; i < count; i++) {
+            parsed[i] = vocabulary[random.nextInt(distinct)].toCharArray();
+        }
+
+        StringInterner pool = null;
+        // The first rounds are warm-up, the last one is reported
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            List<String> interned = new ArrayList<>(count);
+            for (char[] value : parsed) {
+                interned.add(new String(value).intern());
+            }
+            long internTime = System.nanoTime() - start;
+
+            pool = new StringInterner(distinct * 2);
+            start = System.nanoTime();
+            List<String> pooled = new ArrayList<>(count);
+            for (char[] value : parsed) {
+                pooled.add(pool.intern(value, 0, value.length));
+            }
+            long poolTime = System.nanoTime() - start;
+
+            if (round == 2) {
+                System.out.println(count + " values, " + distinct + " distinct:");
+                System.out.println("  new String(...).intern()  : " + internTime / 1_000_000 + " ms");
+                System.out.println("  StringInterner.intern(..) : " + poolTime / 1_000_000 + " ms");
+                System.out.println("  pool: " + pool);
+
+                // Two lookups in a row find the same entry; only equals() holds across evictions
+                String first = pool.intern("status-1".toCharArray(), 0, 8);
+                String second = pool.intern(new String("status-1"));
+                System.out.println("  deduplicated into one object: " + (first == second));
+            }
+        }
+    }
+}
@@ -1,48 +1,336 @@
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Several threads incrementing one shared counter, with the counter implementation pluggable:
+ * synchronized, AtomicLong, striped cells on separate cache lines, and per-thread batching.
+ * For every strategy the harness runs the workers on 1 up to maxThreads threads and prints the
+ * throughput in operations per second.
+ *
+ * The executor mode submits the workers as tasks instead of starting a Thread for each one, on
+ * a pool sized for CPU-bound work, a pool sized for blocking work and one virtual thread per task,
+ * and prints the throughput and the p50/p99 completion latency of every mode.
+ *
+ * Usage: java Thread_01 [maxThreads] [incrementsPerThread]
+ *        java Thread_01 executor [workers] [incrementsPerWorker] [ioMillis] [cpu_pool|io_pool|virtual|all]
+ */
 public class Thread_01 {
 
-    // Shared counter
-    private static int counter = 0;
+    // Shared counter, pluggable implementation
+    interface Counter {
+        void increment();
+
+        long get();
+
+        // Called by a worker when it is done, before join() returns
+        default void flush() {
+        }
+    }
+
+    // Synchronize access to the counter: every increment takes the same monitor
+    static class SynchronizedCounter implements Counter {
+        private long counter = 0;
+
+        @Override
+        public synchronized void increment() {
+            counter++;
+        }
+
+        @Override
+        public synchronized long get() {
+            return counter;
+        }
+    }
+
+    // Lock-free, but all threads still CAS the same cache line
+    static class AtomicCounter implements Counter {
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public void increment() {
+            counter.incrementAndGet();
+        }
 
-    // Synchronize access to the counter
-    private static synchronized void incrementCounter() {
-        counter++;
+        @Override
+        public long get() {
+            return counter.get();
+        }
+    }
+
+    /**
+     * LongAdder-style counter: every thread is given its own cell and the cells are 128 bytes
+     * apart, so two threads never write to the same cache line. get() sums the cells.
+     */
+    static class StripedCounter implements Counter {
+        // 16 longs = 128 bytes, covers the adjacent-line prefetch of x86 as well
+        private static final int PADDING = 16;
+
+        private final AtomicLongArray cells;
+        private final int mask;
+        private final AtomicInteger nextCell = new AtomicInteger();
+        private final ThreadLocal<Integer> cellIndex;
+
+        StripedCounter(int stripes) {
+            int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+            cells = new AtomicLongArray(size * PADDING);
+            mask = size - 1;
+            cellIndex = ThreadLocal.withInitial(() -> (nextCell.getAndIncrement() & mask) * PADDING);
+        }
+
+        @Override
+        public void increment() {
+            cells.getAndIncrement(cellIndex.get());
+        }
+
+        @Override
+        public long get() {
+            long sum = 0;
+            for (int i = 0; i <= mask; i++) {
+                sum += cells.get(i * PADDING);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Every thread counts in a private batch and publishes it to the shared total when the batch
+     * is full or when the worker flushes at the end of its run. get() is exact once the workers
+     * have been joined.
+     */
+    static class BatchingCounter implements Counter {
+        private final AtomicLong total = new AtomicLong();
+        private final ThreadLocal<long[]> batch = ThreadLocal.withInitial(() -> new long[1]);
+        private final long batchSize;
+
+        BatchingCounter(long batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void increment() {
+            long[] local = batch.get();
+            if (++local[0] == batchSize) {
+                total.addAndGet(local[0]);
+                local[0] = 0;
+            }
+        }
+
+        @Override
+        public void flush() {
+            long[] local = batch.get();
+            total.addAndGet(local[0]);
+            local[0] = 0;
+        }
+
+        @Override
+        public long get() {
+            return total.get();
+        }
     }
 
     // Worker class that extends Thread
     static class CounterWorker extends Thread {
+        private final Counter counter;
         private final int numIncrements;
 
-        public CounterWorker(int numIncrements) {
+        public CounterWorker(Counter counter, int numIncrements) {
+            this.counter = counter;
             this.numIncrements = numIncrements;
         }
 
         @Override
         public void run() {
+            work(counter, numIncrements, 0);
+        }
+
+        // Body of a worker, shared by the threads and the executor tasks
+        static void work(Counter counter, int numIncrements, long ioMillis) {
             for (int i = 0; i < numIncrements; i++) {
-                incrementCounter();
+                counter.increment();
+            }
+            counter.flush();
+
+            // Simulated blocking I/O
+            if (ioMillis > 0) {
+                try {
+                    Thread.sleep(ioMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
-            System.out.println("Thread " + Thread.currentThread().getId() + " finished.");
         }
     }
 
-    public static void main(String[] args) throws InterruptedException {
-        // Number of threads and increments per thread
-        int numThreads = 5;
-        int incrementsPerThread = 1000;
+    enum Strategy {
+        SYNCHRONIZED, ATOMIC, STRIPED, BATCHING;
+
+        Counter newCounter(int threads) {
+            switch (this) {
+                case SYNCHRONIZED: return new SynchronizedCounter();
+                case ATOMIC: return new AtomicCounter();
+                case STRIPED: return new StripedCounter(threads);
+                case BATCHING: return new BatchingCounter(1024);
+                default: throw new IllegalArgumentException("Unknown strategy: " + this);
+            }
+        }
+    }
+
+    /**
+     * Starts numThreads workers on a new counter, joins them and returns the elapsed nanoseconds.
+     */
+    static long run(Strategy strategy, int numThreads, int incrementsPerThread) throws InterruptedException {
+        Counter counter = strategy.newCounter(numThreads);
 
         // Create and start threads
         Thread[] threads = new Thread[numThreads];
         for (int i = 0; i < numThreads; i++) {
-            threads[i] = new CounterWorker(incrementsPerThread);
-            threads[i].start();
+            threads[i] = new CounterWorker(counter, incrementsPerThread);
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
         }
 
         // Wait for all threads to finish
         for (Thread thread : threads) {
             thread.join();
         }
+        long elapsed = System.nanoTime() - start;
+
+        long expected = (long) numThreads * incrementsPerThread;
+        if (counter.get() != expected) {
+            throw new IllegalStateException(strategy + ": counter is " + counter.get() + ", expected " + expected);
+        }
+        return elapsed;
+    }
+
+    enum ExecutionMode { CPU_POOL, IO_POOL, VIRTUAL }
+
+    // Upper bound of the pool sized for blocking work
+    private static final int MAX_IO_POOL_SIZE = 1000;
+
+    /**
+     * CPU_POOL has one thread per processor. IO_POOL follows N_cpu * (1 + W / C), with W the time
+     * a task waits and C the time it computes (see threads_configuration_based_on_cpu_cores.md).
+     * Returns null when the mode is not available on this JVM.
+     */
+    static ExecutorService newExecutor(ExecutionMode mode, double waitToCompute) {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        switch (mode) {
+            case CPU_POOL:
+                return Executors.newFixedThreadPool(cpus);
+            case IO_POOL:
+                int size = (int) Math.min(MAX_IO_POOL_SIZE, Math.max(cpus, cpus * (1 + waitToCompute)));
+                return Executors.newFixedThreadPool(size);
+            case VIRTUAL:
+                return newVirtualThreadPerTaskExecutor();
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() exists from JDK 21 on; it is looked up
+    // reflectively so this file still compiles and runs on older JDKs
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Submits the workers as tasks to the executor of the given mode and prints the throughput and
+     * the p50/p99 latency from submission to completion.
+     */
+    static void runTasks(ExecutionMode mode, int workers, int incrementsPerWorker, long ioMillis,
+                         double waitToCompute) throws InterruptedException {
+        ExecutorService executor = newExecutor(mode, waitToCompute);
+        if (executor == null) {
+            System.out.printf("%-10s not available on Java %s (virtual threads need 21+)%n",
+                    mode, System.getProperty("java.version"));
+            return;
+        }
 
-        // Print the final counter value
-        System.out.println("Final counter value: " + counter);
+        Counter counter = Strategy.BATCHING.newCounter(Runtime.getRuntime().availableProcessors());
+        long[] latencies = new long[workers];
+        CountDownLatch done = new CountDownLatch(workers);
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < workers; i++) {
+                int id = i;
+                long submitted = System.nanoTime();
+                executor.execute(() -> {
+                    CounterWorker.work(counter, incrementsPerWorker, ioMillis);
+                    latencies[id] = System.nanoTime() - submitted;
+                    done.countDown();
+                });
+            }
+            done.await();
+        } finally {
+            executor.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long expected = (long) workers * incrementsPerWorker;
+        if (counter.get() != expected) {
+            throw new IllegalStateException(mode + ": counter is " + counter.get() + ", expected " + expected);
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%-10s %10d %14.0f %12.2f %12.2f%n", mode, workers, workers * 1e9 / elapsed,
+                latencies[(int) (0.50 * (workers - 1))] / 1e6, latencies[(int) (0.99 * (workers - 1))] / 1e6);
+    }
+
+    static void executorMain(String[] args) throws InterruptedException {
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int incrementsPerWorker = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        long ioMillis = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        String selected = args.length > 4 ? args[4] : "all";
+
+        // Estimate C: the compute time of one task, measured on this thread without I/O
+        Counter calibration = Strategy.BATCHING.newCounter(1);
+        long calibrationStart = System.nanoTime();
+        for (int i = 0; i < 1_000; i++) {
+            CounterWorker.work(calibration, incrementsPerWorker, 0);
+        }
+        double computeNanos = Math.max(1, (System.nanoTime() - calibrationStart) / 1_000.0);
+        double waitToCompute = ioMillis * 1e6 / computeNanos;
+
+        System.out.printf("%-10s %10s %14s %12s %12s%n", "mode", "workers", "tasks/s", "p50 ms", "p99 ms");
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            if (selected.equalsIgnoreCase("all") || selected.equalsIgnoreCase(mode.name())) {
+                runTasks(mode, workers, incrementsPerWorker, ioMillis, waitToCompute);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0 && args[0].equalsIgnoreCase("executor")) {
+            executorMain(args);
+            return;
+        }
+
+        // Number of threads and increments per thread
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int incrementsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        System.out.printf("%-14s %8s %16s%n", "strategy", "threads", "ops/s");
+        for (Strategy strategy : Strategy.values()) {
+            // Warm-up so the JIT has compiled the increment path before measuring
+            run(strategy, maxThreads, incrementsPerThread);
+
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                long elapsed = run(strategy, threads, incrementsPerThread);
+                double opsPerSecond = (double) threads * incrementsPerThread * 1e9 / elapsed;
+                System.out.printf("%-14s %8d %,16.0f%n", strategy, threads, opsPerSecond);
+            }
+        }
     }
 }
@@ -1,9 +1,6 @@
 package in.sp.backend;
 
-import java.io.File;
-
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
+import java.nio.file.Paths;
 
 public class JavaToXML {
 	public static void main(String[] args) {
@@ -13,14 +10,10 @@ public class JavaToXML {
 			student.setFirstName("John");
 			student.setLastName("Smith");
 			
-			JAXBContext jaxbContext = JAXBContext.newInstance(Student.class);
-			
-			Marshaller marshaller = jaxbContext.createMarshaller();
-			
-			File file = new File("src\\main\\resources\\student.xml");
-			
+			// The JAXBContext is built once and shared; see JaxbBindingService
+			JaxbBindingService service = new JaxbBindingService(Student.class);
 			
-			marshaller.marshal(student, file);
+			service.marshal(student, Paths.get("src", "main", "resources", "student.xml"));
 			
 		}
 		catch(Exception e){
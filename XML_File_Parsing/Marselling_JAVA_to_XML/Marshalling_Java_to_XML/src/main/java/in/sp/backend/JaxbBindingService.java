@@ -0,0 +1,425 @@
+package in.sp.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * JAXB marshalling and unmarshalling without paying for JAXBContext.newInstance on every call.
+ *
+ * A JAXBContext reflects over all the bound classes and builds the binding model, which takes
+ * milliseconds; it is thread-safe, so it is built once per set of classes and shared by every
+ * service for that set. Marshaller and Unmarshaller are cheap next to that but not thread-safe:
+ * each thread either keeps its own (PER_THREAD) or borrows one from a bounded pool and gives it
+ * back (POOLED, better when there are many short-lived threads).
+ *
+ * The bulk methods read and write a document of many records, e.g.
+ * <students><student>...</student>...</students>, one record at a time through StAX, so neither
+ * side needs all the records in memory.
+ */
+public class JaxbBindingService {
+
+	public enum Reuse { PER_THREAD, POOLED }
+
+	private static final ConcurrentHashMap<Set<Class<?>>, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+
+	private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	// Idle marshallers kept by a POOLED service; more than this are left to the garbage collector
+	private static final int POOL_SIZE = 32;
+
+	private final JAXBContext context;
+	private final Reuse reuse;
+
+	private final ThreadLocal<Marshaller> threadMarshaller;
+	private final ThreadLocal<Unmarshaller> threadUnmarshaller;
+	private final BlockingQueue<Marshaller> marshallers;
+	private final BlockingQueue<Unmarshaller> unmarshallers;
+
+	public JaxbBindingService(Class<?>... classes) throws JAXBException {
+		this(Reuse.PER_THREAD, classes);
+	}
+
+	public JaxbBindingService(Reuse reuse, Class<?>... classes) throws JAXBException {
+		this.context = context(classes);
+		this.reuse = reuse;
+		if (reuse == Reuse.PER_THREAD) {
+			threadMarshaller = new ThreadLocal<>();
+			threadUnmarshaller = new ThreadLocal<>();
+			marshallers = null;
+			unmarshallers = null;
+		} else {
+			threadMarshaller = null;
+			threadUnmarshaller = null;
+			marshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+			unmarshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+		}
+	}
+
+	/**
+	 * The shared JAXBContext for these classes, built on first use. The order of the classes
+	 * does not matter.
+	 */
+	public static JAXBContext context(Class<?>... classes) throws JAXBException {
+		Set<Class<?>> key = new LinkedHashSet<>(Arrays.asList(classes));
+		JAXBContext context = CONTEXTS.get(key);
+		if (context != null) {
+			return context;
+		}
+		// Not computeIfAbsent: newInstance is slow and may throw; a rare duplicate is harmless
+		context = JAXBContext.newInstance(classes);
+		JAXBContext existing = CONTEXTS.putIfAbsent(Set.copyOf(key), context);
+		return existing != null ? existing : context;
+	}
+
+	public JAXBContext getContext() {
+		return context;
+	}
+
+	public String toXml(Object value) throws JAXBException {
+		StringWriter out = new StringWriter();
+		marshal(value, out);
+		return out.toString();
+	}
+
+	public void marshal(Object value, Writer out) throws JAXBException {
+		Marshaller marshaller = borrowMarshaller(false);
+		try {
+			marshaller.marshal(value, out);
+		} finally {
+			release(marshaller);
+		}
+	}
+
+	public void marshal(Object value, OutputStream out) throws JAXBException {
+		Marshaller marshaller = borrowMarshaller(false);
+		try {
+			marshaller.marshal(value, out);
+		} finally {
+			release(marshaller);
+		}
+	}
+
+	public void marshal(Object value, Path file) throws JAXBException, IOException {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			marshal(value, out);
+		}
+	}
+
+	public <T> T fromXml(String xml, Class<T> type) throws JAXBException {
+		return unmarshal(new StringReader(xml), type);
+	}
+
+	public <T> T unmarshal(Reader in, Class<T> type) throws JAXBException {
+		Unmarshaller unmarshaller = borrowUnmarshaller();
+		try {
+			return unmarshaller.unmarshal(new StreamSource(in), type).getValue();
+		} finally {
+			release(unmarshaller);
+		}
+	}
+
+	public <T> T unmarshal(InputStream in, Class<T> type) throws JAXBException {
+		Unmarshaller unmarshaller = borrowUnmarshaller();
+		try {
+			return unmarshaller.unmarshal(new StreamSource(in), type).getValue();
+		} finally {
+			release(unmarshaller);
+		}
+	}
+
+	/**
+	 * Writes <rootElement> with one fragment per item of values, consuming it as it goes.
+	 * Returns the number of items written.
+	 */
+	public long marshalAll(Iterator<?> values, String rootElement, OutputStream out)
+			throws JAXBException, XMLStreamException {
+		XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+		Marshaller marshaller = borrowMarshaller(true);
+		long count = 0;
+		try {
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeStartElement(rootElement);
+			while (values.hasNext()) {
+				marshaller.marshal(values.next(), writer);
+				count++;
+			}
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.flush();
+		} finally {
+			release(marshaller);
+			writer.close();
+		}
+		return count;
+	}
+
+	public long marshalAll(Stream<?> values, String rootElement, OutputStream out)
+			throws JAXBException, XMLStreamException {
+		return marshalAll(values.iterator(), rootElement, out);
+	}
+
+	/**
+	 * Writes value without an XML declaration, as one record of a document whose root element
+	 * is written by the caller. The marshaller flushes out after every call.
+	 */
+	public void marshalFragment(Object value, OutputStream out) throws JAXBException {
+		Marshaller marshaller = borrowMarshaller(true);
+		try {
+			marshaller.marshal(value, out);
+		} finally {
+			release(marshaller);
+		}
+	}
+
+	/**
+	 * Calls sink with every <element> of the document, bound to type, in document order; other
+	 * elements are skipped. Returns the number of records.
+	 */
+	public <T> long unmarshalAll(InputStream in, String element, Class<T> type, Consumer<? super T> sink)
+			throws JAXBException, XMLStreamException {
+		try (Stream<T> records = unmarshalAll(in, element, type)) {
+			long[] count = new long[1];
+			records.forEach(record -> {
+				sink.accept(record);
+				count[0]++;
+			});
+			return count[0];
+		} catch (BindingException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * The <element>s of the document as a lazy Stream: each record is read when the stream asks
+	 * for it. Close the stream to release the reader and the unmarshaller. A binding error is
+	 * thrown from the stream operation as a BindingException.
+	 */
+	public <T> Stream<T> unmarshalAll(InputStream in, String element, Class<T> type)
+			throws JAXBException, XMLStreamException {
+		XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+		Unmarshaller unmarshaller = borrowUnmarshaller();
+		Spliterator<T> records = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action) {
+				try {
+					// unmarshal() leaves the reader just after the record, possibly on the next one
+					while (reader.getEventType() != XMLStreamConstants.START_ELEMENT
+							|| !reader.getLocalName().equals(element)) {
+						if (!reader.hasNext()) {
+							return false;
+						}
+						reader.next();
+					}
+					action.accept(unmarshaller.unmarshal(reader, type).getValue());
+					return true;
+				} catch (JAXBException e) {
+					throw new BindingException(e);
+				} catch (XMLStreamException e) {
+					throw new BindingException(new JAXBException(e.getMessage(), e));
+				}
+			}
+		};
+		return StreamSupport.stream(records, false).onClose(() -> {
+			release(unmarshaller);
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {
+				// Nothing more will be read
+			}
+		});
+	}
+
+	/**
+	 * A JAXBException thrown from a Stream operation.
+	 */
+	public static class BindingException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		BindingException(JAXBException cause) {
+			super(cause.getMessage(), cause);
+		}
+
+		@Override
+		public synchronized JAXBException getCause() {
+			return (JAXBException) super.getCause();
+		}
+	}
+
+	private Marshaller borrowMarshaller(boolean fragment) throws JAXBException {
+		Marshaller marshaller;
+		if (reuse == Reuse.PER_THREAD) {
+			marshaller = threadMarshaller.get();
+			if (marshaller == null) {
+				marshaller = context.createMarshaller();
+				threadMarshaller.set(marshaller);
+			}
+		} else {
+			marshaller = marshallers.poll();
+			if (marshaller == null) {
+				marshaller = context.createMarshaller();
+			}
+		}
+		// Set on every use: the previous user may have changed them
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, fragment);
+		marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
+		return marshaller;
+	}
+
+	private Unmarshaller borrowUnmarshaller() throws JAXBException {
+		Unmarshaller unmarshaller;
+		if (reuse == Reuse.PER_THREAD) {
+			unmarshaller = threadUnmarshaller.get();
+			if (unmarshaller == null) {
+				unmarshaller = context.createUnmarshaller();
+				threadUnmarshaller.set(unmarshaller);
+			}
+		} else {
+			unmarshaller = unmarshallers.poll();
+			if (unmarshaller == null) {
+				unmarshaller = context.createUnmarshaller();
+			}
+		}
+		return unmarshaller;
+	}
+
+	private void release(Marshaller marshaller) {
+		if (reuse == Reuse.POOLED) {
+			marshallers.offer(marshaller);
+		}
+	}
+
+	private void release(Unmarshaller unmarshaller) {
+		if (reuse == Reuse.POOLED) {
+			unmarshallers.offer(unmarshaller);
+		}
+	}
+
+	private static XMLInputFactory newInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+
+	/*
+	 * Per-object latency of a marshal and an unmarshal, the way JavaToXML and XmlToJava did it
+	 * (a new JAXBContext and Marshaller each time) against this service, then a bulk round trip
+	 * through a file.
+	 */
+	public static void main(String[] args) throws Exception {
+		int bulk = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+		Student student = new Student();
+		student.setId(1);
+		student.setFirstName("John");
+		student.setLastName("Smith");
+
+		// The first rounds are warm-up, the last one is reported
+		for (int round = 0; round < 3; round++) {
+			boolean report = round == 2;
+			int n = 200;
+			long start = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				JAXBContext jaxbContext = JAXBContext.newInstance(Student.class);
+				StringWriter out = new StringWriter();
+				jaxbContext.createMarshaller().marshal(student, out);
+				Unmarshaller unmarshaller = JAXBContext.newInstance(Student.class).createUnmarshaller();
+				check(student, (Student) unmarshaller.unmarshal(new StringReader(out.toString())));
+			}
+			long perCall = (System.nanoTime() - start) / n;
+
+			List<String> results = new ArrayList<>();
+			results.add(String.format("  new JAXBContext per call  %,10.1f us per marshal + unmarshal", perCall / 1e3));
+			for (Reuse reuse : Reuse.values()) {
+				JaxbBindingService service = new JaxbBindingService(reuse, Student.class);
+				int m = 50_000;
+				start = System.nanoTime();
+				for (int i = 0; i < m; i++) {
+					check(student, service.fromXml(service.toXml(student), Student.class));
+				}
+				long perCached = (System.nanoTime() - start) / m;
+				results.add(String.format("  cached, %-10s         %,10.1f us per marshal + unmarshal (%.0fx)", reuse,
+						perCached / 1e3, (double) perCall / perCached));
+			}
+			if (report) {
+				results.forEach(System.out::println);
+			}
+		}
+
+		JaxbBindingService service = new JaxbBindingService(Reuse.POOLED, Student.class);
+		Path file = Files.createTempFile("students", ".xml");
+		try {
+			long start = System.nanoTime();
+			long written;
+			try (OutputStream out = new java.io.BufferedOutputStream(Files.newOutputStream(file))) {
+				// Generated on the fly: the list of students never exists
+				Iterator<Student> students = Stream.iterate(0L, i -> i + 1).limit(bulk).map(i -> {
+					Student s = new Student();
+					s.setId(i);
+					s.setFirstName("First" + (i % 100));
+					s.setLastName("Last" + (i % 1000));
+					return s;
+				}).iterator();
+				written = service.marshalAll(students, "students", out);
+			}
+			long writeNanos = System.nanoTime() - start;
+
+			long[] idSum = new long[1];
+			start = System.nanoTime();
+			long read;
+			try (InputStream in = new java.io.BufferedInputStream(Files.newInputStream(file))) {
+				read = service.unmarshalAll(in, "student", Student.class, s -> idSum[0] += s.getId());
+			}
+			long readNanos = System.nanoTime() - start;
+			if (written != bulk || read != bulk || idSum[0] != (long) bulk * (bulk - 1) / 2) {
+				throw new AssertionError("Bulk round trip wrote " + written + ", read " + read);
+			}
+			System.out.printf("Bulk: %,d students, %,d KB: marshalAll %,.0f/s, unmarshalAll %,.0f/s%n", bulk,
+					Files.size(file) >> 10, bulk / (writeNanos / 1e9), bulk / (readNanos / 1e9));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private static void check(Student expected, Student actual) {
+		if (actual.getId() != expected.getId() || !expected.getFirstName().equals(actual.getFirstName())
+				|| !expected.getLastName().equals(actual.getLastName())) {
+			throw new AssertionError("Round trip changed the student");
+		}
+	}
+}
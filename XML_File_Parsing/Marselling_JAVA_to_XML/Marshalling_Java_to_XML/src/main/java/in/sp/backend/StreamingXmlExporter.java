@@ -0,0 +1,304 @@
+package in.sp.backend;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes any number of records as one XML document, e.g. millions of students, without
+ * holding them in memory: the records come from an Iterator and each one is marshalled and
+ * written out before the next is asked for.
+ *
+ * The root element is written with an XMLStreamWriter; each record is marshalled as a fragment
+ * straight into the same buffer, which goes to a channel when it fills up, optionally through
+ * gzip. JAXB flushes its output after every record, so the buffer ignores flush() and is only
+ * written out when full or at the end; otherwise every record would be a separate write.
+ */
+public class StreamingXmlExporter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	private final JaxbBindingService service;
+	private final String rootElement;
+	private boolean gzip;
+	private long progressEvery;
+	private Consumer<Stats> progress;
+
+	public StreamingXmlExporter(JaxbBindingService service, String rootElement) {
+		this.service = service;
+		this.rootElement = rootElement;
+	}
+
+	/**
+	 * Compresses the document with gzip.
+	 */
+	public StreamingXmlExporter gzip(boolean gzip) {
+		this.gzip = gzip;
+		return this;
+	}
+
+	/**
+	 * Calls progress with the running totals after every records records (at least 1).
+	 */
+	public StreamingXmlExporter progress(long records, Consumer<Stats> progress) {
+		if (records < 1) {
+			throw new IllegalArgumentException("Progress interval must be at least 1 record: " + records);
+		}
+		this.progressEvery = records;
+		this.progress = progress;
+		return this;
+	}
+
+	/**
+	 * Records written, bytes of XML, bytes sent to the channel (smaller with gzip) and the time
+	 * taken.
+	 */
+	public static class Stats {
+		public final long records;
+		public final long xmlBytes;
+		public final long channelBytes;
+		public final long nanos;
+
+		Stats(long records, long xmlBytes, long channelBytes, long nanos) {
+			this.records = records;
+			this.xmlBytes = xmlBytes;
+			this.channelBytes = channelBytes;
+			this.nanos = nanos;
+		}
+
+		public double recordsPerSecond() {
+			return records / (nanos / 1e9);
+		}
+
+		public double xmlBytesPerSecond() {
+			return xmlBytes / (nanos / 1e9);
+		}
+
+		public double channelBytesPerSecond() {
+			return channelBytes / (nanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%,d records in %.2f s: %,.0f records/s, %,.1f MB/s of XML, %,.1f MB/s written (%,d MB)",
+					records, nanos / 1e9, recordsPerSecond(), xmlBytesPerSecond() / (1 << 20),
+					channelBytesPerSecond() / (1 << 20), channelBytes >> 20);
+		}
+	}
+
+	public Stats export(Stream<?> records, Path file) throws IOException, JAXBException, XMLStreamException {
+		return export(records.iterator(), file);
+	}
+
+	public Stats export(Iterator<?> records, Path file) throws IOException, JAXBException, XMLStreamException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			return export(records, channel);
+		}
+	}
+
+	/**
+	 * Writes the document to channel, which is left open.
+	 */
+	public Stats export(Iterator<?> records, WritableByteChannel channel)
+			throws IOException, JAXBException, XMLStreamException {
+		long start = System.nanoTime();
+		ChannelOutput sink = new ChannelOutput(channel);
+		Compressor compressor = gzip ? new Compressor(sink) : null;
+		try {
+			RecordBuffer out = new RecordBuffer(compressor != null ? compressor : sink);
+
+			XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeStartElement(rootElement);
+			// Closes the start tag, so the records land inside it
+			writer.writeCharacters("");
+			writer.flush();
+
+			long count = 0;
+			while (records.hasNext()) {
+				service.marshalFragment(records.next(), out);
+				count++;
+				if (progress != null && count % progressEvery == 0) {
+					progress.accept(new Stats(count, out.bytes, sink.bytes, System.nanoTime() - start));
+				}
+			}
+
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.flush();
+			writer.close();
+			out.drain();
+			if (compressor != null) {
+				compressor.finish();
+			}
+			return new Stats(count, out.bytes, sink.bytes, System.nanoTime() - start);
+		} finally {
+			if (compressor != null) {
+				compressor.release();
+			}
+		}
+	}
+
+	/*
+	 * gzip whose deflater (native memory) can be freed without writing anything more: after a
+	 * failure the channel gets no trailer, and the channel itself belongs to the caller.
+	 */
+	private static class Compressor extends GZIPOutputStream {
+		Compressor(OutputStream out) throws IOException {
+			super(out, BUFFER_SIZE);
+		}
+
+		void release() {
+			def.end();
+		}
+	}
+
+	/*
+	 * Collects the small writes of the XML writer and the marshaller; flush() does nothing.
+	 */
+	private static class RecordBuffer extends OutputStream {
+		private final OutputStream next;
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private int size;
+		long bytes;
+
+		RecordBuffer(OutputStream next) {
+			this.next = next;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (size == buffer.length) {
+				drain();
+			}
+			buffer[size++] = (byte) b;
+			bytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			bytes += len;
+			if (len > buffer.length - size) {
+				drain();
+				if (len > buffer.length) {
+					next.write(b, off, len);
+					return;
+				}
+			}
+			System.arraycopy(b, off, buffer, size, len);
+			size += len;
+		}
+
+		@Override
+		public void flush() {
+			// Called by JAXB after every record
+		}
+
+		void drain() throws IOException {
+			if (size > 0) {
+				next.write(buffer, 0, size);
+				size = 0;
+			}
+		}
+	}
+
+	/*
+	 * Writes whole arrays to the channel, which may take more than one write().
+	 */
+	private static class ChannelOutput extends OutputStream {
+		private final WritableByteChannel channel;
+		long bytes;
+
+		ChannelOutput(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			bytes += len;
+		}
+	}
+
+	/*
+	 * Exports generated students (none are kept) as plain XML and gzip, printing progress with
+	 * the heap in use, then reads both files back with JaxbBindingService.unmarshalAll to
+	 * check it. Run with a small heap, e.g. -Xmx32m, to see it stay flat.
+	 */
+	public static void main(String[] args) throws Exception {
+		long count = args.length > 0 ? Long.parseLong(args[0]) : 2_000_000;
+		JaxbBindingService service = new JaxbBindingService(Student.class);
+		Runtime runtime = Runtime.getRuntime();
+
+		Path plain = Files.createTempFile("students", ".xml");
+		Path compressed = Files.createTempFile("students", ".xml.gz");
+		try {
+			// Warm-up
+			new StreamingXmlExporter(service, "students").export(students(500_000), plain);
+
+			for (boolean gzip : new boolean[] { false, true }) {
+				System.out.println(gzip ? "gzip:" : "plain:");
+				StreamingXmlExporter exporter = new StreamingXmlExporter(service, "students").gzip(gzip)
+						.progress(Math.max(1, count / 4), stats -> System.out.printf("  %s, heap used %,d MB%n",
+								stats, (runtime.totalMemory() - runtime.freeMemory()) >> 20));
+				Stats stats = exporter.export(students(count), gzip ? compressed : plain);
+				System.out.println("  done: " + stats);
+			}
+
+			for (Path file : new Path[] { plain, compressed }) {
+				long[] idSum = new long[1];
+				long read;
+				try (InputStream in = file == compressed
+						? new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE)
+						: new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+					read = service.unmarshalAll(in, "student", Student.class, s -> idSum[0] += s.getId());
+				}
+				if (read != count || idSum[0] != count * (count - 1) / 2) {
+					throw new AssertionError("Read back " + read + " students from " + file + " with id sum " + idSum[0]);
+				}
+			}
+			System.out.printf("Read back %,d students from both files%n", count);
+		} finally {
+			Files.deleteIfExists(plain);
+			Files.deleteIfExists(compressed);
+		}
+	}
+
+	private static Iterator<Student> students(long count) {
+		return Stream.iterate(0L, i -> i + 1).limit(count).map(i -> {
+			Student s = new Student();
+			s.setId(i);
+			s.setFirstName("First" + (i % 100));
+			s.setLastName("Last" + (i % 1000));
+			return s;
+		}).iterator();
+	}
+}
@@ -4,49 +4,234 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
 public class SAX_XML_Parser {
+
+    static class Student {
+        String firstName;
+        String lastName;
+        int score;
+
+        void setFirstName(String firstName) {
+            this.firstName = firstName;
+        }
+
+        void setLastName(String lastName) {
+            this.lastName = lastName;
+        }
+
+        void setScore(int score) {
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return firstName + " " + lastName + ": " + score;
+        }
+    }
+
+    /*
+     * One String per distinct name; names repeat a lot in large files. Kept here rather than
+     * shared with Java Programs/String, so this directory compiles on its own.
+     */
+    static class Names implements UnaryOperator<String> {
+        private final Map<String, String> pool = new HashMap<>();
+        private long lookups;
+
+        @Override
+        public String apply(String name) {
+            lookups++;
+            String pooled = pool.putIfAbsent(name, name);
+            return pooled != null ? pooled : name;
+        }
+
+        @Override
+        public String toString() {
+            return pool.size() + " distinct of " + lookups + " names";
+        }
+    }
+
+    static SaxBinding<Student> studentBinding(Names names) {
+        return SaxBinding.builder("students/student", Student::new)
+                .string("firstName", Student::setFirstName, names)
+                .string("lastName", Student::setLastName, names)
+                .integer("bscore", Student::setScore)
+                .build();
+    }
+
     public static void main(String[] args) {
-        try {
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+            return;
+        }
 
-            DefaultHandler handler = new DefaultHandler() {
-                boolean bfname = false, blname = false, bscore = false;
+        Names names = new Names();
 
-                public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-                    System.out.println("Start Element: " + qName);
-                    if (qName.equals("firstName")) bfname = true;
-                    if (qName.equals("lastName")) blname = true;
-                    if (qName.equals("bscore")) bscore = true;
-                }
+        // Assuming you have an XML file named "input.xml"
+        try (Stream<Student> students = studentBinding(names).stream(Paths.get("input.xml"))) {
+            students.forEach(student -> {
+                System.out.println("First name: " + student.firstName);
+                System.out.println("Last name: " + student.lastName);
+                System.out.println("Score: " + student.score);
+            });
+            System.out.println("Name pool: " + names);
+        } catch (Exception e) {
+            e.printStackTrace(); // Print the stack trace for debugging
+        }
+    }
+
+    /*
+     * The handler this class used before SaxBinding, kept for the benchmark: a boolean per field,
+     * qName compared with every name, a line printed for every start and end tag, and only the
+     * first characters() call of an element used, so text split by the parser was cut short.
+     */
+    static class FlagHandler extends DefaultHandler {
+        private final Names names;
+        private final PrintStream out;
+        boolean bfname = false, blname = false, bscore = false;
 
-                public void endElement(String uri, String localName, String qName) throws SAXException {
-                    System.out.println("End Element: " + qName); // Changed to "End Element"
+        FlagHandler(Names names, PrintStream out) {
+            this.names = names;
+            this.out = out;
+        }
+
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            out.println("Start Element: " + qName);
+            if (qName.equals("firstName")) bfname = true;
+            if (qName.equals("lastName")) blname = true;
+            if (qName.equals("bscore")) bscore = true;
+        }
+
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            out.println("End Element: " + qName);
+        }
+
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (bfname) {
+                out.println("First name: " + names.apply(new String(ch, start, length)));
+                bfname = false;
+            }
+
+            if (blname) {
+                out.println("Last name: " + names.apply(new String(ch, start, length)));
+                blname = false;
+            }
+
+            if (bscore) {
+                out.println("Score: " + new String(ch, start, length));
+                bscore = false;
+            }
+        }
+    }
+
+    private static final String[] FIRST = { "John", "Jane", "Emily", "Michael", "Sarah", "David", "Laura", "Daniel" };
+    private static final String[] LAST = { "Doe", "Smith", "Johnson", "Brown", "Williams", "Miller", "Davis" };
+
+    // A file like input.xml with count students; student i has score i % 101
+    static void generate(Path file, int count) throws java.io.IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<students>\n");
+            for (int i = 0; i < count; i++) {
+                out.write("    <student>\n        <firstName>");
+                out.write(FIRST[i % FIRST.length]);
+                out.write("</firstName>\n        <lastName>");
+                out.write(LAST[i % LAST.length]);
+                out.write("</lastName>\n        <bscore>");
+                out.write(Integer.toString(i % 101));
+                out.write("</bscore>\n    </student>\n");
+            }
+            out.write("</students>\n");
+        }
+    }
+
+    /*
+     * The old handler with its output thrown away (it still formats every line), against the
+     * binding with a callback and as a Stream. The binding runs are checked against the
+     * generated scores and names.
+     */
+    private static void bench(int count) {
+        try {
+            Path file = Files.createTempFile("students", ".xml");
+            try {
+                generate(file, count);
+                System.out.printf("%,d students, %,d MB%n", count, Files.size(file) >> 20);
+                long expectedSum = 0;
+                for (int i = 0; i < count; i++) {
+                    expectedSum += i % 101;
                 }
+                PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+                SAXParserFactory factory = SAXParserFactory.newInstance();
 
-                public void characters(char[] ch, int start, int length) throws SAXException {
-                    if (bfname) {
-                        System.out.println("First name: " + new String(ch, start, length)); // Corrected newString to new String
-                        bfname = false;
-                    }
+                // The first rounds are warm-up, the last one is reported
+                for (int round = 0; round < 3; round++) {
+                    boolean report = round == 2;
+
+                    // The parser alone, as a floor
+                    long start = System.nanoTime();
+                    factory.newSAXParser().parse(file.toFile(), new DefaultHandler());
+                    long empty = System.nanoTime() - start;
 
-                    if (blname) { // Fixed variable name from lname to blname
-                        System.out.println("Last name: " + new String(ch, start, length));
-                        blname = false;
+                    start = System.nanoTime();
+                    SAXParser saxParser = factory.newSAXParser();
+                    saxParser.parse(file.toFile(), new FlagHandler(new Names(), discard));
+                    long flags = System.nanoTime() - start;
+
+                    SaxBinding<Student> binding = studentBinding(new Names());
+                    long[] sum = new long[1];
+                    start = System.nanoTime();
+                    long records = binding.parse(file, student -> sum[0] += student.score);
+                    long callback = System.nanoTime() - start;
+                    check(records, sum[0], count, expectedSum);
+
+                    start = System.nanoTime();
+                    long[] streamed = new long[2];
+                    try (Stream<Student> students = binding.stream(file)) {
+                        students.forEach(student -> {
+                            if (!student.firstName.equals(FIRST[(int) (streamed[0] % FIRST.length)])
+                                    || !student.lastName.equals(LAST[(int) (streamed[0] % LAST.length)])) {
+                                throw new AssertionError("Student " + streamed[0] + " is " + student);
+                            }
+                            streamed[0]++;
+                            streamed[1] += student.score;
+                        });
                     }
+                    long stream = System.nanoTime() - start;
+                    check(streamed[0], streamed[1], count, expectedSum);
 
-                    if (bscore) {
-                        System.out.println("Score: " + new String(ch, start, length));
-                        bscore = false;
+                    if (report) {
+                        report("empty DefaultHandler", empty, count);
+                        report("boolean flags, printing", flags, count);
+                        report("SaxBinding.parse", callback, count);
+                        report("SaxBinding.stream", stream, count);
                     }
                 }
-            };
-
-            // Assuming you have an XML file named "input.xml"
-            saxParser.parse("input.xml", handler);
-
+            } finally {
+                Files.deleteIfExists(file);
+            }
         } catch (Exception e) {
-            e.printStackTrace(); // Print the stack trace for debugging
+            e.printStackTrace();
         }
     }
+
+    private static void check(long records, long sum, int count, long expectedSum) {
+        if (records != count || sum != expectedSum) {
+            throw new AssertionError(records + " students with score sum " + sum + ", expected " + count + " and "
+                    + expectedSum);
+        }
+    }
+
+    private static void report(String name, long nanos, int count) {
+        System.out.printf("  %-26s %8.1f ms  %,12.0f students/s%n", name, nanos / 1e6, count / (nanos / 1e9));
+    }
 }
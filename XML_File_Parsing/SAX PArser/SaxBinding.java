@@ -0,0 +1,440 @@
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Binds repeated XML records to Java objects with SAX, without a hand-written handler.
+ *
+ *   SaxBinding<Student> binding = SaxBinding.builder("students/student", Student::new)
+ *           .string("firstName", Student::setFirstName)
+ *           .integer("bscore", Student::setScore)
+ *           .build();
+ *   binding.parse(file, student -> ...);
+ *
+ * The paths are turned once into a tree of element names, so the handler finds the setter for an
+ * element with one map lookup from the current node instead of comparing qName against every
+ * name it knows. Elements that are not bound, and everything under them, are skipped by keeping a
+ * count. The text of a bound element is collected into one reused char[] across however many
+ * characters() calls the parser splits it into, and handed to the setter at the end tag; numbers
+ * are parsed straight from that buffer, so an int field never becomes a String.
+ *
+ * A binding is immutable and can be shared; every parse gets its own handler and parser.
+ */
+public final class SaxBinding<T> {
+
+    /**
+     * Receives the complete text of an element; the array is reused after the call returns.
+     */
+    @FunctionalInterface
+    public interface TextSetter<T> {
+        void set(T record, char[] text, int offset, int length);
+    }
+
+    @FunctionalInterface
+    public interface IntSetter<T> {
+        void set(T record, int value);
+    }
+
+    @FunctionalInterface
+    public interface LongSetter<T> {
+        void set(T record, long value);
+    }
+
+    // One element name in the path tree
+    private static final class Node<T> {
+        final Map<String, Node<T>> children = new HashMap<>();
+        TextSetter<T> setter;
+        boolean record;
+
+        Node<T> child(String name) {
+            return children.computeIfAbsent(name, n -> new Node<>());
+        }
+    }
+
+    // JAXP does not promise that a factory is thread-safe, and parse() runs on the stream's
+    // producer thread and on parallel workers, so every thread configures its own
+    private static final ThreadLocal<SAXParserFactory> PARSER_FACTORY =
+            ThreadLocal.withInitial(SaxBinding::newFactory);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int STREAM_BATCH = 256;
+
+    private final Node<T> root;
+    private final Supplier<? extends T> factory;
+
+    private SaxBinding(Node<T> root, Supplier<? extends T> factory) {
+        this.root = root;
+        this.factory = factory;
+    }
+
+    /**
+     * Starts a binding for the records at recordPath, e.g. "students/student", from the document
+     * element down. The field paths given to the builder are relative to the record element.
+     */
+    public static <T> Builder<T> builder(String recordPath, Supplier<? extends T> factory) {
+        return new Builder<>(recordPath, factory);
+    }
+
+    public static final class Builder<T> {
+        private final Node<T> root = new Node<>();
+        private final Node<T> record;
+        private final Supplier<? extends T> factory;
+
+        private Builder(String recordPath, Supplier<? extends T> factory) {
+            this.factory = factory;
+            this.record = descend(root, recordPath);
+            record.record = true;
+        }
+
+        public Builder<T> text(String path, TextSetter<T> setter) {
+            Node<T> node = descend(record, path);
+            if (node.setter != null) {
+                throw new IllegalArgumentException("Path bound twice: " + path);
+            }
+            node.setter = setter;
+            return this;
+        }
+
+        public Builder<T> string(String path, BiConsumer<T, String> setter) {
+            return text(path, (r, text, offset, length) -> setter.accept(r, new String(text, offset, length)));
+        }
+
+        /**
+         * A string field with many repeated values: every value goes through pool (an interner,
+         * or String::intern), so equal values can share one String.
+         */
+        public Builder<T> string(String path, BiConsumer<T, String> setter, UnaryOperator<String> pool) {
+            return text(path, (r, text, offset, length) -> setter.accept(r, pool.apply(new String(text, offset, length))));
+        }
+
+        public Builder<T> integer(String path, IntSetter<T> setter) {
+            return text(path, (r, text, offset, length) -> setter.set(r, parseInt(text, offset, length)));
+        }
+
+        public Builder<T> longValue(String path, LongSetter<T> setter) {
+            return text(path, (r, text, offset, length) -> setter.set(r, parseLong(text, offset, length)));
+        }
+
+        public SaxBinding<T> build() {
+            return new SaxBinding<>(root, factory);
+        }
+
+        private static <T> Node<T> descend(Node<T> from, String path) {
+            Node<T> node = from;
+            for (String name : path.split("/")) {
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Empty element name in path: " + path);
+                }
+                node = node.child(name);
+            }
+            return node;
+        }
+    }
+
+    /**
+     * Parses the file and passes every record to sink, in document order, as soon as its end tag
+     * is read. Returns the number of records.
+     */
+    public long parse(Path file, Consumer<? super T> sink) throws IOException, SAXException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            return parse(in, sink);
+        }
+    }
+
+    public long parse(InputStream in, Consumer<? super T> sink) throws IOException, SAXException {
+        SAXParser parser;
+        try {
+            parser = PARSER_FACTORY.get().newSAXParser();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+        BindingHandler handler = new BindingHandler(sink);
+        parser.parse(in, handler);
+        return handler.count;
+    }
+
+    // No DOCTYPE and no external entities or DTDs, like the StAX readers next to this one
+    private static SAXParserFactory newFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        try {
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalStateException("The SAX parser cannot be configured safely", e);
+        }
+        return factory;
+    }
+
+    /**
+     * The records of the file as a lazy Stream. A background thread runs the parser and hands
+     * over records in batches through a small bounded queue, so memory stays bounded however large
+     * the file is. Closing the stream (try-with-resources) stops the parser. A parse error is
+     * thrown from the stream operation that reaches it, as an UncheckedIOException.
+     *
+     * parse(file, sink) is cheaper when a callback is enough: no thread and no hand-off.
+     */
+    public Stream<T> stream(Path file) {
+        BlockingQueue<List<T>> queue = new ArrayBlockingQueue<>(4);
+        List<T> end = new ArrayList<>(0);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        Thread producer = new Thread(() -> {
+            Batcher<T> batcher = new Batcher<>(queue, cancelled);
+            try {
+                parse(file, batcher);
+                batcher.flush();
+            } catch (CancellationException e) {
+                return;
+            } catch (IOException | SAXException | RuntimeException e) {
+                failure.set(e);
+            }
+            try {
+                hand(queue, end, cancelled);
+            } catch (CancellationException e) {
+                // Nobody is reading any more
+            }
+        }, "sax-binding-" + file.getFileName());
+        producer.setDaemon(true);
+        producer.start();
+
+        Spliterator<T> records = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private Iterator<T> current = List.<T>of().iterator();
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                while (!current.hasNext()) {
+                    if (done) {
+                        return false;
+                    }
+                    List<T> next;
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Interrupted while waiting for records");
+                    }
+                    if (next == end) {
+                        done = true;
+                        Exception e = failure.get();
+                        if (e != null) {
+                            throw new UncheckedIOException(e instanceof IOException ? (IOException) e
+                                    : new IOException(e.getMessage(), e));
+                        }
+                    }
+                    current = next.iterator();
+                }
+                action.accept(current.next());
+                return true;
+            }
+        };
+        return StreamSupport.stream(records, false).onClose(() -> {
+            cancelled.set(true);
+            producer.interrupt();
+        });
+    }
+
+    // Collects records on the parser thread and hands them over STREAM_BATCH at a time
+    private static final class Batcher<T> implements Consumer<T> {
+        private final BlockingQueue<List<T>> queue;
+        private final AtomicBoolean cancelled;
+        private List<T> batch = new ArrayList<>(STREAM_BATCH);
+
+        Batcher(BlockingQueue<List<T>> queue, AtomicBoolean cancelled) {
+            this.queue = queue;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public void accept(T record) {
+            batch.add(record);
+            if (batch.size() == STREAM_BATCH) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                hand(queue, batch, cancelled);
+                batch = new ArrayList<>(STREAM_BATCH);
+            }
+        }
+    }
+
+    // Waits for room in the queue, giving up when the stream has been closed
+    private static <T> void hand(BlockingQueue<List<T>> queue, List<T> batch, AtomicBoolean cancelled) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled.get()) {
+                    throw new CancellationException();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new CancellationException();
+        }
+    }
+
+    private final class BindingHandler extends DefaultHandler {
+        private final Consumer<? super T> sink;
+
+        private final List<Node<T>> path = new ArrayList<>();
+        private int depth;
+        // Depth inside an element that is not bound; all its events are ignored
+        private int skipped;
+
+        private T record;
+        private char[] text = new char[256];
+        private int textLength;
+        private boolean collecting;
+
+        private Locator locator;
+        long count;
+
+        BindingHandler(Consumer<? super T> sink) {
+            this.sink = sink;
+            path.add(root);
+        }
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (skipped > 0) {
+                skipped++;
+                return;
+            }
+            Node<T> node = path.get(depth).children.get(localName.isEmpty() ? qName : localName);
+            if (node == null || (node.setter != null && record == null)) {
+                skipped = 1;
+                return;
+            }
+            if (++depth == path.size()) {
+                path.add(node);
+            } else {
+                path.set(depth, node);
+            }
+            if (node.record) {
+                record = factory.get();
+            }
+            if (node.setter != null) {
+                collecting = true;
+                textLength = 0;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (!collecting || skipped > 0) {
+                return;
+            }
+            if (textLength + length > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+            }
+            System.arraycopy(ch, start, text, textLength, length);
+            textLength += length;
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (skipped > 0) {
+                skipped--;
+                return;
+            }
+            Node<T> node = path.get(depth--);
+            if (node.setter != null) {
+                collecting = false;
+                try {
+                    node.setter.set(record, text, 0, textLength);
+                } catch (NumberFormatException e) {
+                    throw new SAXParseException(e.getMessage() + " in <" + qName + ">", locator, e);
+                }
+            }
+            if (node.record) {
+                sink.accept(record);
+                record = null;
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Integer.parseInt on a char range, ignoring surrounding whitespace, without a String.
+     */
+    static int parseInt(char[] text, int offset, int length) {
+        long value = parseLong(text, offset, length);
+        if (value != (int) value) {
+            throw new NumberFormatException("Out of int range: '" + new String(text, offset, length).trim() + "'");
+        }
+        return (int) value;
+    }
+
+    static long parseLong(char[] text, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end && Character.isWhitespace(text[i])) {
+            i++;
+        }
+        while (end > i && Character.isWhitespace(text[end - 1])) {
+            end--;
+        }
+        boolean negative = false;
+        if (i < end && (text[i] == '-' || text[i] == '+')) {
+            negative = text[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("Not a number: '" + new String(text, offset, length).trim() + "'");
+        }
+        // Accumulate negatively, like Long.parseLong, so Long.MIN_VALUE parses too
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = text[i] - '0';
+            if (digit < 0 || digit > 9 || value < multiplyLimit || value * 10 < limit + digit) {
+                throw new NumberFormatException("Not a number: '" + new String(text, offset, length).trim() + "'");
+            }
+            value = value * 10 - digit;
+        }
+        return negative ? value : -value;
+    }
+}
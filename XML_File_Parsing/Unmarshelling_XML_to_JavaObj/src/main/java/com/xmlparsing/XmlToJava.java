@@ -1,10 +1,6 @@
 package com.xmlparsing;
 
-import java.io.File;
-import java.io.StringReader;
-
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
+import in.sp.backend.JaxbBindingService;
 
 public class XmlToJava {
     public static void main(String[] args) {
@@ -19,15 +15,12 @@ public class XmlToJava {
                             "<lastName>Chouhan</lastName>" +
                             "</student>";
 
-            // Create JAXB context for the Student class
-            JAXBContext jaxbContext = JAXBContext.newInstance(Student.class);
-
-            // Create an unmarshaller instance
-            Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+            // Cached JAXB context and a reused unmarshaller for the Student class
+            JaxbBindingService service = new JaxbBindingService(Student.class);
 
             // Unmarshal the XML content from the string into a Student object
-            // Student student = (Student) unmarshaller.unmarshal(file);
-            Student student = (Student) unmarshaller.unmarshal(new StringReader(xmlStr));
+            // Student student = service.unmarshal(new FileInputStream(file), Student.class);
+            Student student = service.fromXml(xmlStr, Student.class);
 
             // Print the student's first name
             System.out.println(student.getFirstName());
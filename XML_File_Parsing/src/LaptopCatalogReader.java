@@ -0,0 +1,416 @@
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Reads a laptop catalog (items.xml) one laptop at a time.
+ *
+ *   <Items>
+ *       <laptop name="Dell">
+ *           <price value="50000"/>
+ *           <ram value="8GB"/>
+ *       </laptop>
+ *       ...
+ *   </Items>
+ *
+ * XMLParser used to build the whole file as a DOM tree, which needs several times the file size in
+ * heap, so a catalog of a few GB cannot be read at all. The STAX mode pulls events from an
+ * XMLStreamReader and hands each laptop to the caller as soon as its end tag is read; only that
+ * one laptop is in memory at a time, whatever the file size. The DOM mode is the old way, kept to
+ * compare against.
+ *
+ * Usage:
+ *   java LaptopCatalogReader read <file> [stax|dom]
+ *   java LaptopCatalogReader generate <file> <sizeMB>
+ *   java LaptopCatalogReader check
+ *   java LaptopCatalogReader bench [sizeMB ...]     (default 1 16 64; e.g. 1 64 1024 5120)
+ */
+public class LaptopCatalogReader {
+
+    public enum Mode { STAX, DOM }
+
+    public static final class Laptop {
+        private final String name;
+        private final Map<String, String> details;
+
+        Laptop(String name, Map<String, String> details) {
+            this.name = name;
+            this.details = Collections.unmodifiableMap(details);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Detail element name to its value attribute, in document order
+        public Map<String, String> getDetails() {
+            return details;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + details;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+    /**
+     * Calls consumer once for every laptop in the file, in document order, and returns how many
+     * there were.
+     */
+    public static long read(Path file, Mode mode, Consumer<? super Laptop> consumer) throws IOException {
+        try {
+            return mode == Mode.STAX ? readStax(file, consumer) : readDom(file, consumer);
+        } catch (XMLStreamException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Cannot parse " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * STAX mode over any stream, e.g. a range of a larger file (see ParallelXmlIngester).
+     */
+    public static long read(InputStream in, Consumer<? super Laptop> consumer) throws IOException {
+        try {
+            return readStax(in, consumer);
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot parse catalog: " + e.getMessage(), e);
+        }
+    }
+
+    private static long readStax(Path file, Consumer<? super Laptop> consumer) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            return readStax(in, consumer);
+        }
+    }
+
+    private static long readStax(InputStream in, Consumer<? super Laptop> consumer) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            long count = 0;
+            String name = null;
+            Map<String, String> details = null;
+            // Element depth below the current <laptop>; only its direct children are details, as in DOM mode
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String tag = reader.getLocalName();
+                    if (details != null) {
+                        if (++depth == 1) {
+                            // A detail of the current laptop, like <ram value="8GB"/>
+                            String value = reader.getAttributeValue(null, "value");
+                            details.put(tag, value == null ? "" : value);
+                        }
+                    } else if (tag.equals("laptop")) {
+                        String attribute = reader.getAttributeValue(null, "name");
+                        name = attribute == null ? "" : attribute;
+                        details = new LinkedHashMap<>();
+                        depth = 0;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && details != null) {
+                    if (depth > 0) {
+                        depth--;
+                    } else {
+                        consumer.accept(new Laptop(name, details));
+                        count++;
+                        details = null;
+                    }
+                }
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    // The old XMLParser: the whole document in memory first
+    private static long readDom(Path file, Consumer<? super Laptop> consumer)
+            throws IOException, SAXException, ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document = builder.parse(file.toFile());
+        document.getDocumentElement().normalize();
+
+        return readDom(document.getDocumentElement(), consumer);
+    }
+
+    /*
+     * The laptops under parent, in document order. Like the STAX mode, the elements inside a
+     * <laptop> are its details and are not searched for more laptops; getElementsByTagName would
+     * also return a <laptop> nested in another one.
+     */
+    private static long readDom(Element parent, Consumer<? super Laptop> consumer) {
+        if (parent.getTagName().equals("laptop")) {
+            Map<String, String> details = new LinkedHashMap<>();
+            NodeList laptopDetails = parent.getChildNodes();
+            for (int j = 0; j < laptopDetails.getLength(); j++) {
+                Node detailNode = laptopDetails.item(j);
+                if (detailNode.getNodeType() == Node.ELEMENT_NODE) {
+                    Element detailElement = (Element) detailNode;
+                    details.put(detailElement.getTagName(), detailElement.getAttribute("value"));
+                }
+            }
+            consumer.accept(new Laptop(parent.getAttribute("name"), details));
+            return 1;
+        }
+        long count = 0;
+        NodeList children = parent.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                count += readDom((Element) child, consumer);
+            }
+        }
+        return count;
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // A catalog has no DTD; do not resolve external entities from untrusted files
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static final String[] BRANDS = { "Dell", "Lenovo", "Apple", "HP", "Asus", "Acer", "MSI", "Samsung" };
+    private static final String[] RAM = { "4GB", "8GB", "16GB", "32GB", "64GB" };
+    private static final String[] DISKS = { "ssd", "hardDrive" };
+    private static final String[] DISK_SIZES = { "128GB", "256GB", "512GB", "1TB", "2TB" };
+
+    /**
+     * Writes a catalog like items.xml of about targetBytes bytes; returns the number of laptops.
+     */
+    public static long generate(Path file, long targetBytes) throws IOException {
+        Random random = new Random(42);
+        long count = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Items>\n");
+            long written = 48;
+            StringBuilder laptop = new StringBuilder(256);
+            while (written < targetBytes) {
+                laptop.setLength(0);
+                laptop.append("    <laptop name=\"").append(BRANDS[random.nextInt(BRANDS.length)]).append(' ')
+                        .append(count).append("\">\n");
+                laptop.append("        <price value=\"").append(20_000 + random.nextInt(180_000)).append("\"/>\n");
+                laptop.append("        <ram value=\"").append(RAM[random.nextInt(RAM.length)]).append("\"/>\n");
+                laptop.append("        <").append(DISKS[random.nextInt(DISKS.length)]).append(" value=\"")
+                        .append(DISK_SIZES[random.nextInt(DISK_SIZES.length)]).append("\"/>\n");
+                laptop.append("    </laptop>\n");
+                out.append(laptop);
+                written += laptop.length();
+                count++;
+            }
+            out.write("</Items>\n");
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String command = args.length > 0 ? args[0] : "bench";
+        switch (command) {
+            case "read": {
+                Mode mode = args.length > 2 ? Mode.valueOf(args[2].toUpperCase(Locale.ROOT)) : Mode.STAX;
+                long count = read(Paths.get(args[1]), mode, laptop -> {
+                    System.out.println("Laptop Name: " + laptop.getName());
+                    laptop.getDetails().forEach((tag, value) -> System.out.println("  " + tag + ": " + value));
+                });
+                System.out.println(count + " laptops");
+                break;
+            }
+            case "generate": {
+                long count = generate(Paths.get(args[1]), Long.parseLong(args[2]) << 20);
+                System.out.println(count + " laptops written to " + args[1]);
+                break;
+            }
+            case "check": {
+                check();
+                System.out.println("Both modes read the same laptops");
+                break;
+            }
+            case "bench": {
+                long[] sizes = { 1, 16, 64 };
+                if (args.length > 1) {
+                    sizes = new long[args.length - 1];
+                    for (int i = 1; i < args.length; i++) {
+                        sizes[i - 1] = Long.parseLong(args[i]);
+                    }
+                }
+                bench(sizes);
+                break;
+            }
+            default:
+                System.err.println("Usage: java LaptopCatalogReader read <file> [stax|dom] | generate <file> <sizeMB>"
+                        + " | check | bench [sizeMB ...]");
+        }
+    }
+
+    // A <laptop> nested in another one, at different depths, is a detail in both modes
+    private static void check() throws IOException {
+        String xml = "<Items>\n"
+                + "  <laptop name=\"Dell\"><price value=\"1\"/><laptop name=\"Inner\"><ram value=\"8GB\"/></laptop>"
+                + "<box><laptop name=\"Deep\"/></box><ram value=\"16GB\"/></laptop>\n"
+                + "  <shelf><laptop name=\"HP\"><price value=\"2\"/></laptop></shelf>\n"
+                + "  <laptop name=\"Acer\"/>\n"
+                + "</Items>\n";
+        Path file = Files.createTempFile("catalog", ".xml");
+        try {
+            Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+            List<String> stax = new ArrayList<>();
+            List<String> dom = new ArrayList<>();
+            read(file, Mode.STAX, laptop -> stax.add(laptop.getName() + laptop.getDetails()));
+            read(file, Mode.DOM, laptop -> dom.add(laptop.getName() + laptop.getDetails()));
+            List<String> expected = List.of("Dell{price=1, laptop=, box=, ram=16GB}", "HP{price=2}", "Acer{}");
+            if (!stax.equals(expected) || !dom.equals(expected)) {
+                throw new AssertionError("STAX " + stax + ", DOM " + dom + ", expected " + expected);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void bench(long[] sizesMB) throws IOException {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        System.out.printf("Max heap %,d MB%n", maxHeap >> 20);
+        System.out.println("   size      mode   laptops       time      MB/s   laptops/s   peak heap   live after GC");
+        for (long sizeMB : sizesMB) {
+            Path file = Files.createTempFile("catalog", ".xml");
+            try {
+                generate(file, sizeMB << 20);
+                long bytes = Files.size(file);
+                // Warm-up on the smaller files only; it does not matter next to a run of seconds
+                if (sizeMB <= 64) {
+                    read(file, Mode.STAX, laptop -> { });
+                }
+                run(file, bytes, Mode.STAX);
+                // The DOM tree takes about 16 times the file size in heap
+                if (bytes * 20 < maxHeap) {
+                    if (sizeMB <= 64) {
+                        read(file, Mode.DOM, laptop -> { });
+                    }
+                    run(file, bytes, Mode.DOM);
+                } else {
+                    System.out.printf("%,7d MB  %6s   skipped: the tree would not fit in the heap%n", sizeMB, Mode.DOM);
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void run(Path file, long bytes, Mode mode) throws IOException {
+        long[] priceSum = new long[1];
+        resetPeakHeap();
+        LiveHeapSampler live = new LiveHeapSampler();
+        live.start();
+        long start = System.nanoTime();
+        long count = read(file, mode, laptop -> priceSum[0] += Long.parseLong(laptop.getDetails().get("price")));
+        long nanos = System.nanoTime() - start;
+        long peak = peakHeap();
+        long livePeak = live.finish();
+        System.out.printf("%,7d MB  %6s  %,8d  %7.2f s  %8.1f  %,10.0f  %,8d MB  %,11d MB%n", bytes >> 20, mode, count,
+                nanos / 1e9, bytes / 1e6 / (nanos / 1e9), count / (nanos / 1e9), peak >> 20, livePeak >> 20);
+        if (priceSum[0] <= 0) {
+            throw new AssertionError("No prices read");
+        }
+    }
+
+    /*
+     * The peak heap includes garbage not collected yet, so it follows the young generation size
+     * as much as the parser. What the parser really keeps is what survives a collection: this
+     * samples the heap pools' usage after their last GC and keeps the largest total seen.
+     */
+    private static final class LiveHeapSampler extends Thread {
+        private volatile boolean running = true;
+        private long max;
+
+        LiveHeapSampler() {
+            super("live-heap-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private synchronized void sample() {
+            long used = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                    used += pool.getCollectionUsage().getUsed();
+                }
+            }
+            max = Math.max(max, used);
+        }
+
+        long finish() {
+            running = false;
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sample();
+            return max;
+        }
+    }
+
+    // Peak heap is the sum of the peaks of the heap pools since the last reset (after a GC)
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
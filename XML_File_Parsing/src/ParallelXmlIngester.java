@@ -0,0 +1,630 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses a large, flat XML document on several threads:
+ *
+ *   <students>                     <Items>
+ *       <student>...</student>         <laptop name="Dell">...</laptop>
+ *       <student>...</student>         <laptop name="HP">...</laptop>
+ *       ...                            ...
+ *   </students>                    </Items>
+ *
+ * The file is memory-mapped and cut into ranges at safe split points: an opening record tag that
+ * directly follows (after whitespace) the closing tag of the previous record, i.e. a point between
+ * two top-level records. Every range is parsed by its own parser, fed the original XML declaration
+ * and root start tag before the range and the root end tag after it, so each parser sees a small
+ * well-formed document with the same root, namespaces and encoding as the whole file. The ranges
+ * run as tasks on a ForkJoinPool.
+ *
+ * The records come back either in document order, delivered on the calling thread, or unordered,
+ * delivered on the worker threads as soon as they are parsed (the sink must then be thread-safe).
+ *
+ * A document that cannot be split safely is parsed on the calling thread as one piece: one with a
+ * DOCTYPE (entities could expand to anything), an encoding that is not ASCII-compatible, records
+ * that are not direct children of the root, or no split point found. What the splitter cannot see
+ * is a record tag inside a comment or CDATA section exactly at a split point; documents of this
+ * kind do not have them.
+ *
+ * Usage: java ParallelXmlIngester [sizeMB]
+ */
+public class ParallelXmlIngester implements AutoCloseable {
+
+    /**
+     * Parses one well-formed document and passes its records to sink. LaptopCatalogReader::read
+     * and SaxBinding::parse both have this shape.
+     */
+    @FunctionalInterface
+    public interface RangeParser<T> {
+        void parse(InputStream in, Consumer<? super T> sink) throws Exception;
+    }
+
+    // Ranges smaller than this are not worth a task of their own
+    private static final long MIN_RANGE = 1 << 20;
+    // Ranges per thread, so a slow range does not leave the other threads idle at the end
+    private static final int RANGES_PER_THREAD = 4;
+    // Ordered mode holds the records of the ranges in flight; keep those lists short-lived
+    private static final long TARGET_RANGE = 8 << 20;
+    // How far past a target offset to look for a split point
+    private static final long SCAN_LIMIT = 16 << 20;
+    // The prolog and the root start tag must be found within this many bytes
+    private static final int HEAD_LIMIT = 1 << 20;
+
+    private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._-]+)[\"']");
+
+    private final byte[] openTag;
+    private final byte[] closeTag;
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    public ParallelXmlIngester(String recordElement, int parallelism) {
+        this.openTag = ("<" + recordElement).getBytes(StandardCharsets.US_ASCII);
+        this.closeTag = ("</" + recordElement + ">").getBytes(StandardCharsets.US_ASCII);
+        this.parallelism = parallelism;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * How a file would be cut: the ranges, or why it has to be parsed in one piece.
+     */
+    public static final class Plan {
+        final byte[] prefix;
+        final byte[] suffix;
+        final long[] bounds;
+        final String fallbackReason;
+
+        private Plan(byte[] prefix, byte[] suffix, long[] bounds) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.bounds = bounds;
+            this.fallbackReason = null;
+        }
+
+        private Plan(String fallbackReason) {
+            this.prefix = null;
+            this.suffix = null;
+            this.bounds = null;
+            this.fallbackReason = fallbackReason;
+        }
+
+        public boolean isSplit() {
+            return bounds != null && bounds.length > 2;
+        }
+
+        public int ranges() {
+            return bounds == null ? 1 : bounds.length - 1;
+        }
+
+        @Override
+        public String toString() {
+            return fallbackReason != null ? "single-threaded: " + fallbackReason : ranges() + (ranges() == 1 ? " range" : " ranges");
+        }
+    }
+
+    public Plan plan(Path file) throws IOException {
+        try (MappedFile mapped = MappedFile.open(file)) {
+            return plan(mapped);
+        }
+    }
+
+    /**
+     * Parses the file, passing every record to sink, and returns the number of records.
+     *
+     * @param ordered true: records in document order, sink called on this thread only;
+     *                false: sink called from the worker threads as records are parsed
+     */
+    public <T> long ingest(Path file, RangeParser<T> parser, Consumer<? super T> sink, boolean ordered)
+            throws IOException {
+        try (MappedFile mapped = MappedFile.open(file)) {
+            Plan plan = plan(mapped);
+            if (!plan.isSplit()) {
+                CountingSink<T> counting = new CountingSink<>(sink);
+                parseRange(parser, mapped.stream(0, mapped.size), counting);
+                return counting.count.get();
+            }
+            return ordered ? ingestOrdered(mapped, plan, parser, sink) : ingestUnordered(mapped, plan, parser, sink);
+        }
+    }
+
+    private <T> long ingestOrdered(MappedFile mapped, Plan plan, RangeParser<T> parser, Consumer<? super T> sink)
+            throws IOException {
+        // Keep a window of ranges in flight and hand over the finished ones in order
+        int ranges = plan.ranges();
+        int window = 2 * parallelism;
+        Deque<ForkJoinTask<List<T>>> inFlight = new ArrayDeque<>();
+        int next = 0;
+        long count = 0;
+        try {
+            while (next < ranges || !inFlight.isEmpty()) {
+                while (next < ranges && inFlight.size() < window) {
+                    int range = next++;
+                    inFlight.add(pool.submit(ForkJoinTask.adapt(() -> {
+                        List<T> records = new ArrayList<>();
+                        parseRange(parser, rangeStream(mapped, plan, range), records::add);
+                        return records;
+                    })));
+                }
+                List<T> records = inFlight.removeFirst().join();
+                records.forEach(sink);
+                count += records.size();
+            }
+        } catch (RuntimeException e) {
+            inFlight.forEach(task -> task.cancel(true));
+            throw unwrap(e);
+        }
+        return count;
+    }
+
+    private <T> long ingestUnordered(MappedFile mapped, Plan plan, RangeParser<T> parser, Consumer<? super T> sink)
+            throws IOException {
+        CountingSink<T> counting = new CountingSink<>(sink);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < plan.ranges(); i++) {
+            int range = i;
+            tasks.add(pool.submit(() -> {
+                try {
+                    parseRange(parser, rangeStream(mapped, plan, range), counting);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        try {
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (RuntimeException e) {
+            tasks.forEach(task -> task.cancel(true));
+            throw unwrap(e);
+        }
+        return counting.count.get();
+    }
+
+    private static <T> void parseRange(RangeParser<T> parser, InputStream in, Consumer<? super T> sink)
+            throws IOException {
+        try {
+            parser.parse(in, sink);
+        } catch (IOException | RuntimeException e) {
+            throw e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : e instanceof IOException
+                    ? (IOException) e : new IOException(e.getMessage(), e);
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static InputStream rangeStream(MappedFile mapped, Plan plan, int range) {
+        InputStream body = mapped.stream(plan.bounds[range], plan.bounds[range + 1]);
+        return new SequenceInputStream(new ByteArrayInputStream(plan.prefix),
+                new SequenceInputStream(body, new ByteArrayInputStream(plan.suffix)));
+    }
+
+    private static IOException unwrap(RuntimeException e) {
+        Throwable cause = e;
+        while ((cause instanceof UncheckedIOException || cause.getClass() == RuntimeException.class)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+    }
+
+    private static final class CountingSink<T> implements Consumer<T> {
+        private final Consumer<? super T> sink;
+        final AtomicLong count = new AtomicLong();
+
+        CountingSink(Consumer<? super T> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void accept(T record) {
+            sink.accept(record);
+            count.incrementAndGet();
+        }
+    }
+
+    private Plan plan(MappedFile file) {
+        int headLength = (int) Math.min(file.size, HEAD_LIMIT);
+        byte[] head = file.bytes(0, headLength);
+        String headText = new String(head, StandardCharsets.ISO_8859_1);
+
+        int firstRecord = findOpenTag(head, 0, headLength);
+        if (firstRecord < 0) {
+            return new Plan("no <" + tagName() + "> in the first " + (HEAD_LIMIT >> 20) + " MB");
+        }
+        String prolog = headText.substring(0, firstRecord);
+        if (prolog.contains("<!DOCTYPE")) {
+            return new Plan("the document has a DOCTYPE");
+        }
+
+        // XML declaration, then the root start tag, then nothing but whitespace, comments and
+        // processing instructions up to the first record
+        String declaration = "";
+        int at = 0;
+        if (prolog.startsWith("<?xml")) {
+            at = prolog.indexOf("?>") + 2;
+            declaration = prolog.substring(0, at);
+            Matcher encoding = ENCODING.matcher(declaration);
+            if (encoding.find() && !isAsciiCompatible(encoding.group(1))) {
+                return new Plan("encoding " + encoding.group(1) + " is not ASCII-compatible");
+            }
+        }
+        int rootStart = -1;
+        for (int i = at; i < prolog.length(); i++) {
+            if (prolog.charAt(i) == '<' && i + 1 < prolog.length() && prolog.charAt(i + 1) != '?'
+                    && prolog.charAt(i + 1) != '!') {
+                if (rootStart >= 0) {
+                    return new Plan("<" + tagName() + "> is not a direct child of the root element");
+                }
+                rootStart = i;
+            }
+        }
+        if (rootStart < 0) {
+            return new Plan("<" + tagName() + "> is the root element");
+        }
+        int rootEnd = prolog.indexOf('>', rootStart);
+        if (rootEnd < 0) {
+            return new Plan("cannot read the root start tag");
+        }
+        String rootTag = prolog.substring(rootStart, rootEnd + 1);
+        Matcher rootName = Pattern.compile("<([^\\s/>]+)").matcher(rootTag);
+        rootName.find();
+
+        long end = findLastCloseTag(file);
+        if (end < 0) {
+            return new Plan("no </" + tagName() + "> near the end");
+        }
+
+        long start = firstRecord;
+        long wanted = Math.max((long) parallelism * RANGES_PER_THREAD, (end - start) / TARGET_RANGE);
+        int ranges = (int) Math.max(1, Math.min(wanted, (end - start) / MIN_RANGE));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        for (int k = 1; k < ranges; k++) {
+            long target = start + (end - start) * k / ranges;
+            long split = findSplit(file, Math.max(target, bounds.get(bounds.size() - 1) + 1), end);
+            if (split > 0 && split < end) {
+                bounds.add(split);
+            }
+        }
+        bounds.add(end);
+        if (bounds.size() == 2 && ranges > 1) {
+            return new Plan("no split point between records found");
+        }
+
+        long[] boundArray = bounds.stream().mapToLong(Long::longValue).toArray();
+        byte[] prefix = (declaration + rootTag).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] suffix = ("</" + rootName.group(1) + ">").getBytes(StandardCharsets.ISO_8859_1);
+        return new Plan(prefix, suffix, boundArray);
+    }
+
+    // The first "<record" followed by whitespace, '>' or '/' in bytes[from, to)
+    private int findOpenTag(byte[] bytes, int from, int to) {
+        for (int i = from; i + openTag.length < to; i++) {
+            if (matches(bytes, i, openTag) && isNameEnd(bytes[i + openTag.length])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * The first "<record" at or after from that follows "</record>" and whitespace only: a point
+     * between two top-level records. Returns -1 if there is none within SCAN_LIMIT bytes.
+     */
+    private long findSplit(MappedFile file, long from, long end) {
+        long limit = Math.min(end, from + SCAN_LIMIT);
+        for (long i = from; i + openTag.length < limit; i++) {
+            if (file.get(i) != '<' || !file.matches(i, openTag) || !isNameEnd(file.get(i + openTag.length))) {
+                continue;
+            }
+            long j = i - 1;
+            while (j >= 0 && isWhitespace(file.get(j))) {
+                j--;
+            }
+            long closeStart = j - closeTag.length + 1;
+            if (closeStart >= 0 && file.matches(closeStart, closeTag)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // The end of the last "</record>", searching back from the end of the file
+    private long findLastCloseTag(MappedFile file) {
+        long stop = Math.max(0, file.size - HEAD_LIMIT);
+        for (long i = file.size - closeTag.length; i >= stop; i--) {
+            if (file.get(i) == '<' && file.matches(i, closeTag)) {
+                return i + closeTag.length;
+            }
+        }
+        return -1;
+    }
+
+    private String tagName() {
+        return new String(openTag, 1, openTag.length - 1, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean matches(byte[] bytes, int at, byte[] pattern) {
+        for (int k = 0; k < pattern.length; k++) {
+            if (bytes[at + k] != pattern[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || isWhitespace(b);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static boolean isAsciiCompatible(String encoding) {
+        switch (encoding.toUpperCase(Locale.ROOT)) {
+            case "UTF-8":
+            case "UTF8":
+            case "US-ASCII":
+            case "ASCII":
+            case "ISO-8859-1":
+            case "LATIN1":
+            case "WINDOWS-1252":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /*
+     * A read-only mapping of a whole file, in segments of 1 GB since one MappedByteBuffer holds at
+     * most 2 GB. Only absolute gets are used, so the buffers are safe to share between threads.
+     */
+    static final class MappedFile implements AutoCloseable {
+        private static final int SEGMENT_SHIFT = 30;
+        private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+        private final FileChannel channel;
+        private final MappedByteBuffer[] segments;
+        final long size;
+
+        private MappedFile(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            int count = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long position = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(1L << SEGMENT_SHIFT,
+                        size - position));
+            }
+        }
+
+        static MappedFile open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                return new MappedFile(channel);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        byte get(long position) {
+            return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+        }
+
+        boolean matches(long at, byte[] pattern) {
+            if (at + pattern.length > size) {
+                return false;
+            }
+            for (int k = 0; k < pattern.length; k++) {
+                if (get(at + k) != pattern[k]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        byte[] bytes(long from, int length) {
+            byte[] bytes = new byte[length];
+            read(from, bytes, 0, length);
+            return bytes;
+        }
+
+        // Bulk copy, split where the range crosses a segment boundary
+        void read(long position, byte[] into, int offset, int length) {
+            while (length > 0) {
+                int segment = (int) (position >>> SEGMENT_SHIFT);
+                int index = (int) (position & SEGMENT_MASK);
+                int n = Math.min(length, segments[segment].limit() - index);
+                segments[segment].get(index, into, offset, n);
+                position += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        InputStream stream(long from, long to) {
+            return new InputStream() {
+                private long position = from;
+
+                @Override
+                public int read() {
+                    return position < to ? get(position++) & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (position >= to) {
+                        return -1;
+                    }
+                    int n = (int) Math.min(len, to - position);
+                    MappedFile.this.read(position, b, off, n);
+                    position += n;
+                    return n;
+                }
+
+                @Override
+                public int available() {
+                    return (int) Math.min(Integer.MAX_VALUE, to - position);
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The mapping itself is released when the buffers are garbage collected
+            channel.close();
+        }
+    }
+
+    private static final RangeParser<LaptopCatalogReader.Laptop> LAPTOPS = LaptopCatalogReader::read;
+
+    public static void main(String[] args) throws IOException {
+        int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 128;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        checkFallbacks();
+
+        Path file = Files.createTempFile("catalog", ".xml");
+        try {
+            LaptopCatalogReader.generate(file, (long) sizeMB << 20);
+            System.out.printf("Catalog of %,d MB, %d cores available%n", Files.size(file) >> 20, cores);
+
+            // Reference: the sequential reader, and a fingerprint of the names in document order.
+            // Every configuration is timed as the best of three runs; one CPU is enough to show
+            // the overhead of splitting, more are needed to show the scaling
+            long[] expected = new long[3];
+            long sequential = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                Arrays.fill(expected, 0);
+                long start = System.nanoTime();
+                LaptopCatalogReader.read(file, LaptopCatalogReader.Mode.STAX, laptop -> {
+                    expected[0]++;
+                    expected[1] += Long.parseLong(laptop.getDetails().get("price"));
+                    expected[2] = expected[2] * 31 + laptop.getName().hashCode();
+                });
+                sequential = Math.min(sequential, System.nanoTime() - start);
+            }
+            System.out.printf("  sequential LaptopCatalogReader        %7.2f s  %,10.0f laptops/s%n", sequential / 1e9,
+                    expected[0] / (sequential / 1e9));
+
+            List<Integer> threads = new ArrayList<>();
+            for (int p = 1; p <= Math.max(cores, 2); p *= 2) {
+                threads.add(p);
+            }
+            if (!threads.contains(cores)) {
+                threads.add(cores);
+            }
+            for (int p : threads) {
+                try (ParallelXmlIngester ingester = new ParallelXmlIngester("laptop", p)) {
+                    Plan plan = ingester.plan(file);
+                    for (boolean ordered : new boolean[] { true, false }) {
+                        long nanos = Long.MAX_VALUE;
+                        for (int run = 0; run < 3; run++) {
+                            long[] seen = new long[1];
+                            AtomicLong priceSum = new AtomicLong();
+                            long start = System.nanoTime();
+                            long count = ingester.ingest(file, LAPTOPS, laptop -> {
+                                priceSum.addAndGet(Long.parseLong(laptop.getDetails().get("price")));
+                                if (ordered) {
+                                    seen[0] = seen[0] * 31 + laptop.getName().hashCode();
+                                }
+                            }, ordered);
+                            nanos = Math.min(nanos, System.nanoTime() - start);
+                            if (count != expected[0] || priceSum.get() != expected[1]
+                                    || (ordered && seen[0] != expected[2])) {
+                                throw new AssertionError("Parallel result differs from the sequential one with " + p
+                                        + " threads, ordered=" + ordered);
+                            }
+                        }
+                        System.out.printf("  %2d threads, %-9s, %-10s %7.2f s  %,10.0f laptops/s  %.2fx%n", p,
+                                ordered ? "ordered" : "unordered", plan, nanos / 1e9, expected[0] / (nanos / 1e9),
+                                (double) sequential / nanos);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Documents that must not be split still come out right, on one thread
+    private static void checkFallbacks() throws IOException {
+        String doctype = "<?xml version=\"1.0\"?>\n<!DOCTYPE Items [<!ELEMENT Items ANY>]>\n<Items>\n"
+                + "<laptop name=\"A\"><ram value=\"8GB\"/></laptop>\n<laptop name=\"B\"><ram value=\"4GB\"/></laptop>\n"
+                + "</Items>\n";
+        String nested = "<Shop><Items><laptop name=\"A\"/><laptop name=\"B\"/></Items></Shop>";
+        String utf16 = "<?xml version=\"1.0\" encoding=\"UTF-16\"?>";
+        for (String text : new String[] { doctype, nested }) {
+            Path file = Files.createTempFile("fallback", ".xml");
+            try {
+                Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+                try (ParallelXmlIngester ingester = new ParallelXmlIngester("laptop", 4)) {
+                    List<String> names = new ArrayList<>();
+                    long count = ingester.ingest(file, LAPTOPS, laptop -> names.add(laptop.getName()
+                            + laptop.getDetails()), true);
+                    if (count != 2 || ingester.plan(file).isSplit() || !names.get(0).startsWith("A")) {
+                        throw new AssertionError("Fallback parse of " + text + " gave " + names);
+                    }
+                    System.out.println("Not split (" + ingester.plan(file) + "): " + names);
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+        Path file = Files.createTempFile("fallback", ".xml");
+        try {
+            Files.write(file, (utf16 + "<Items><laptop name=\"A\"/></Items>").getBytes(StandardCharsets.ISO_8859_1));
+            try (ParallelXmlIngester ingester = new ParallelXmlIngester("laptop", 4)) {
+                Plan plan = ingester.plan(file);
+                if (plan.isSplit()) {
+                    throw new AssertionError("A UTF-16 document was split");
+                }
+                System.out.println("Not split (" + plan + ")");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        // items.xml itself is too small to be worth splitting
+        Path items = Paths.get("items.xml");
+        if (Files.exists(items)) {
+            try (ParallelXmlIngester ingester = new ParallelXmlIngester("laptop", 4)) {
+                List<String> names = new ArrayList<>();
+                ingester.ingest(items, LAPTOPS, laptop -> names.add(laptop.getName()), true);
+                System.out.println("items.xml (" + ingester.plan(items) + "): " + names);
+            }
+        }
+    }
+}
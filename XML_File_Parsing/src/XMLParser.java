@@ -1,70 +1,34 @@
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.IOException;
+import java.util.Locale;
 
 public class XMLParser {
     /*
-     * Get the Document Builder
-     * Get Document
-     * Normalize the XML structure
-     * Get all the elements by the tag name
+     * Read the laptops one at a time with LaptopCatalogReader (StAX); the whole file is never in
+     * memory, so this works for catalogs of any size
+     * "dom" as the first argument parses the whole document first, as this class used to
+     *
+     * javac LaptopCatalogReader.java XMLParser.java && java XMLParser [stax|dom]
      */
     public static void main(String[] args) {
-        // Get the Document Builder
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-
-        try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-
-            // File path to XML file
-            File xmlFile = new File("items.xml");
-
-            // Check if file exists
-            if (!xmlFile.exists()) {
-                System.err.println("File not found: " + xmlFile.getAbsolutePath());
-                return;
-            }
-
-            // Get Document
-            Document document = builder.parse(xmlFile);
+        LaptopCatalogReader.Mode mode = args.length > 0
+                ? LaptopCatalogReader.Mode.valueOf(args[0].toUpperCase(Locale.ROOT)) : LaptopCatalogReader.Mode.STAX;
 
-            // Normalize the XML structure
-            System.out.println("=========== ===============");
-            document.getDocumentElement().normalize();
+        // File path to XML file
+        File xmlFile = new File("items.xml");
 
-            // Get all the <laptop> elements
-            NodeList laptopList = document.getElementsByTagName("laptop");
-
-            for (int i = 0; i < laptopList.getLength(); i++) {
-                Node laptopNode = laptopList.item(i);
-                if (laptopNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Element laptopElement = (Element) laptopNode;
-                    System.out.println("Laptop Name: " + laptopElement.getAttribute("name"));
-
-                    // Get child nodes of <laptop>
-                    NodeList laptopDetails = laptopElement.getChildNodes();
-                    for (int j = 0; j < laptopDetails.getLength(); j++) {
-                        Node detailNode = laptopDetails.item(j);
-                        if (detailNode.getNodeType() == Node.ELEMENT_NODE) {
-                            Element detailElement = (Element) detailNode;
-                            System.out.println("  " + detailElement.getTagName() + ": " + detailElement.getAttribute("value"));
-                        }
-                    }
-                }
-            }
+        // Check if file exists
+        if (!xmlFile.exists()) {
+            System.err.println("File not found: " + xmlFile.getAbsolutePath());
+            return;
+        }
 
-        } catch (ParserConfigurationException e) {
-            e.printStackTrace();
-        } catch (SAXException e) {
-            e.printStackTrace();
+        System.out.println("=========== ===============");
+        try {
+            LaptopCatalogReader.read(xmlFile.toPath(), mode, laptop -> {
+                System.out.println("Laptop Name: " + laptop.getName());
+                laptop.getDetails().forEach((tag, value) -> System.out.println("  " + tag + ": " + value));
+            });
         } catch (IOException e) {
             e.printStackTrace();
         }